@@ -41,6 +41,9 @@ dependencies {
     implementation("org.apache.httpcomponents:httpcore:4.4.16")
     implementation("org.apache.httpcomponents:httpmime:4.5.14")
 
+    // Certyfikaty dla przechwytywania HTTPS (MITM)
+    implementation("org.bouncycastle:bcpkix-jdk18on:1.77")
+
     // JSON
     implementation("com.fasterxml.jackson.core:jackson-databind:2.16.1")
 
@@ -4,10 +4,12 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import pl.proxion.controller.MainController;
@@ -73,7 +75,10 @@ public class MainApp extends Application {
         searchField.setPromptText("Search requests...");
         searchField.setPrefWidth(200);
 
-        toolbar.getChildren().addAll(clearButton, filterButton, searchField);
+        Label trafficOccupancyLabel = new Label();
+        trafficOccupancyLabel.setStyle("-fx-text-fill: #666666; -fx-padding: 4 0 0 10;");
+
+        toolbar.getChildren().addAll(clearButton, filterButton, searchField, trafficOccupancyLabel);
 
         TableView<pl.proxion.model.HttpTransaction> trafficTable = new TableView<>();
 
@@ -105,7 +110,15 @@ public class MainApp extends Application {
 
         detailsSplitPane.getItems().addAll(requestBox, responseBox);
 
-        trafficContent.getChildren().addAll(toolbar, trafficTable, detailsSplitPane);
+        // Nakładka debugowa z czasami filtrowania (proxion.debugOverlay=true)
+        Label filterLatencyLabel = new Label();
+        filterLatencyLabel.setMouseTransparent(true);
+        filterLatencyLabel.setVisible(false);
+        filterLatencyLabel.setStyle("-fx-background-color: rgba(0,0,0,0.6); -fx-text-fill: white; -fx-padding: 2 6 2 6;");
+        StackPane trafficTableStack = new StackPane(trafficTable, filterLatencyLabel);
+        StackPane.setAlignment(filterLatencyLabel, Pos.BOTTOM_RIGHT);
+
+        trafficContent.getChildren().addAll(toolbar, trafficTableStack, detailsSplitPane);
 
         // Right side - Rewrite Rules
         VBox rewriteSidebar = new VBox(10);
@@ -125,7 +138,11 @@ public class MainApp extends Application {
         rewriteButtons.getChildren().addAll(addRewriteRuleButton, editRewriteRuleButton, deleteRewriteRuleButton);
         rewriteButtons.setSpacing(5);
 
-        rewriteSidebar.getChildren().addAll(rewriteLabel, rewriteTable, rewriteButtons);
+        Label rewriteStatsLabel = new Label();
+        rewriteStatsLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: #666666;");
+        rewriteStatsLabel.setWrapText(true);
+
+        rewriteSidebar.getChildren().addAll(rewriteLabel, rewriteTable, rewriteStatsLabel, rewriteButtons);
 
         proxySplitPane.getItems().addAll(trafficContent, rewriteSidebar);
         proxyTab.setContent(proxySplitPane);
@@ -315,6 +332,9 @@ public class MainApp extends Application {
         mainController.addRewriteRuleButton = addRewriteRuleButton;
         mainController.editRewriteRuleButton = editRewriteRuleButton;
         mainController.deleteRewriteRuleButton = deleteRewriteRuleButton;
+        mainController.trafficOccupancyLabel = trafficOccupancyLabel;
+        mainController.filterLatencyLabel = filterLatencyLabel;
+        mainController.rewriteStatsLabel = rewriteStatsLabel;
 
         mainController.filteredTrafficData = FXCollections.observableArrayList();
         mainController.mainTabPane = tabPane;
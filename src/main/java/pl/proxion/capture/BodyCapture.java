@@ -0,0 +1,81 @@
+package pl.proxion.capture;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Zbiera początek body (do limitu) z kolejnych kawałków HttpContent jako surowe bajty,
+ * razem z całkowitą długością i sumą kontrolną całego body. Dekodowanie znaków odbywa się
+ * dopiero przy wyświetlaniu ({@link BodyText}), nie w wątku Netty.
+ */
+public class BodyCapture {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int limit;
+    private final CRC32C checksum = new CRC32C();
+    private byte[] bytes;
+    private int length;
+    private long totalLength;
+
+    public BodyCapture(int limit) {
+        this.limit = limit;
+    }
+
+    public void append(ByteBuf content) {
+        int readable = content.readableBytes();
+        if (readable == 0) {
+            return;
+        }
+        totalLength += readable;
+        updateChecksum(content);
+
+        if (length >= limit) {
+            return;
+        }
+        int toCopy = Math.min(readable, limit - length);
+        if (bytes == null) {
+            bytes = new byte[Math.min(limit, Math.max(toCopy, 4096))];
+        } else if (length + toCopy > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.min(limit, Math.max(bytes.length * 2, length + toCopy)));
+        }
+        content.getBytes(content.readerIndex(), bytes, length, toCopy);
+        length += toCopy;
+    }
+
+    private void updateChecksum(ByteBuf content) {
+        // Bez kopiowania: CRC32C liczy bezpośrednio na buforach NIO (także złożonych)
+        if (content.nioBufferCount() == 1) {
+            checksum.update(content.nioBuffer());
+        } else {
+            for (ByteBuffer buffer : content.nioBuffers()) {
+                checksum.update(buffer);
+            }
+        }
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public boolean isEmpty() {
+        return totalLength == 0;
+    }
+
+    public int getHash() {
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Zebrane bajty przycięte do faktycznej długości.
+     */
+    public byte[] toBytes() {
+        if (length == 0) {
+            return EMPTY;
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+}
@@ -0,0 +1,33 @@
+package pl.proxion.capture;
+
+/**
+ * Kodek kompresji przechowywanych body. Kodowanie odbywa się w tle po zakończeniu transakcji,
+ * dekodowanie dopiero przy wyświetlaniu body w UI.
+ */
+public interface BodyCodec {
+
+    String getName();
+
+    byte[] encode(byte[] raw);
+
+    byte[] decode(byte[] encoded, int rawLength);
+
+    /**
+     * "deflate" (domyślny), "none" albo pełna nazwa klasy implementującej {@link BodyCodec}
+     * z bezparametrowym konstruktorem. Zwraca null, gdy kompresja jest wyłączona.
+     */
+    static BodyCodec forName(String name, int level) {
+        if (name == null || name.isBlank() || name.equalsIgnoreCase("none")) {
+            return null;
+        }
+        if (name.equalsIgnoreCase("deflate")) {
+            return new DeflateBodyCodec(level);
+        }
+        try {
+            return (BodyCodec) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            System.err.println("⚠️ Unknown body codec " + name + ", using deflate: " + e.getMessage());
+            return new DeflateBodyCodec(level);
+        }
+    }
+}
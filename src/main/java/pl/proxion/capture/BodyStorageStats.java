@@ -0,0 +1,22 @@
+package pl.proxion.capture;
+
+/**
+ * Statystyki magazynu body z deduplikacją: ile bajtów przechwycono, a ile faktycznie przechowujemy.
+ */
+public interface BodyStorageStats {
+
+    long getLogicalBodyBytes();
+
+    long getStoredBodyBytes();
+
+    long getUniqueBodyCount();
+
+    default long getSavedBodyBytes() {
+        return Math.max(0, getLogicalBodyBytes() - getStoredBodyBytes());
+    }
+
+    default double getDedupRatio() {
+        long stored = getStoredBodyBytes();
+        return stored == 0 ? 1.0 : (double) getLogicalBodyBytes() / stored;
+    }
+}
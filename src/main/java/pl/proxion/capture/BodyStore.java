@@ -0,0 +1,185 @@
+package pl.proxion.capture;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Magazyn body adresowany treścią (tryb bez dziennika na dysku). Identyczne body różnych transakcji
+ * wskazują na jedną tablicę; licznik referencji maleje przy usuwaniu wiersza z magazynu ruchu.
+ * Body powyżej progu są przechowywane skompresowane - transakcja trzyma wtedy skompresowaną tablicę,
+ * a {@link #open(byte[])} zwraca oryginał dopiero na potrzeby wyświetlenia.
+ */
+public class BodyStore implements BodyStorageStats {
+
+    // Krótkich body nie opłaca się deduplikować - wpis w mapie kosztuje więcej niż kopia
+    private static final int MIN_DEDUP_BYTES = 64;
+
+    private final Map<Long, Entry> byHash = new HashMap<>();
+    private final Map<byte[], Entry> byArray = new IdentityHashMap<>();
+    private final BodyCodec codec;
+    private final int compressThreshold;
+    private final DecodedBodyCache decodedCache;
+
+    private long logicalBytes;
+    private long storedBytes;
+
+    public BodyStore() {
+        this(null, Integer.MAX_VALUE, new DecodedBodyCache(0));
+    }
+
+    public BodyStore(BodyCodec codec, int compressThreshold, DecodedBodyCache decodedCache) {
+        this.codec = codec;
+        this.compressThreshold = Math.max(MIN_DEDUP_BYTES, compressThreshold);
+        this.decodedCache = decodedCache;
+    }
+
+    /**
+     * Zwraca współdzieloną (ewentualnie skompresowaną) postać bajtów i zwiększa jej licznik referencji.
+     * Kompresja odbywa się w wątku wywołującym, poza blokadą magazynu.
+     */
+    public byte[] intern(byte[] body) {
+        return intern(body, true);
+    }
+
+    public byte[] intern(byte[] body, boolean compress) {
+        if (body == null || body.length < MIN_DEDUP_BYTES) {
+            return body;
+        }
+        long hash = ContentHash.hash64(body);
+        Entry existing;
+        synchronized (this) {
+            existing = byHash.get(hash);
+        }
+        if (existing == null) {
+            byte[] stored = compress ? encode(body) : body;
+            synchronized (this) {
+                existing = byHash.get(hash);
+                if (existing == null) {
+                    Entry entry = new Entry(hash, stored, body.length, stored != body);
+                    byHash.put(hash, entry);
+                    byArray.put(stored, entry);
+                    storedBytes += stored.length;
+                    return reference(entry);
+                }
+            }
+        }
+
+        // Trafienie skrótu - potwierdzamy bajtami, kolizję przechowujemy osobno i bez kompresji
+        if (existing.length != body.length || !Arrays.equals(open(existing), body)) {
+            return body;
+        }
+        synchronized (this) {
+            if (byArray.get(existing.bytes) != existing) {
+                // Wpis zdążył zniknąć - przechowujemy body samodzielnie
+                return body;
+            }
+            return reference(existing);
+        }
+    }
+
+    private byte[] reference(Entry entry) {
+        entry.references++;
+        logicalBytes += entry.length;
+        return entry.bytes;
+    }
+
+    private byte[] encode(byte[] body) {
+        if (codec == null || body.length < compressThreshold) {
+            return body;
+        }
+        byte[] encoded = codec.encode(body);
+        // Dane już skompresowane (obrazy, archiwa) zostawiamy w oryginale
+        return encoded.length < body.length - body.length / 8 ? encoded : body;
+    }
+
+    /**
+     * Zwraca oryginalne bajty body - rozpakowuje postać skompresowaną (z pomocą cache LRU).
+     * Tablice spoza magazynu są zwracane bez zmian.
+     */
+    public byte[] open(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = byArray.get(stored);
+        }
+        return entry != null ? open(entry) : stored;
+    }
+
+    public synchronized boolean isCompressed(byte[] stored) {
+        Entry entry = stored != null ? byArray.get(stored) : null;
+        return entry != null && entry.compressed;
+    }
+
+    private byte[] open(Entry entry) {
+        if (!entry.compressed) {
+            return entry.bytes;
+        }
+        return decodedCache.get(entry, () -> codec.decode(entry.bytes, entry.length));
+    }
+
+    public synchronized void release(byte[] body) {
+        if (body == null) {
+            return;
+        }
+        Entry entry = byArray.get(body);
+        if (entry == null) {
+            return;
+        }
+        logicalBytes -= entry.length;
+        if (--entry.references == 0) {
+            byArray.remove(body);
+            byHash.remove(entry.hash);
+            storedBytes -= body.length;
+            decodedCache.remove(entry);
+        }
+    }
+
+    /**
+     * Czy tablica jest współdzieloną kopią z magazynu (porównanie tożsamości, nie treści).
+     */
+    public synchronized boolean contains(byte[] body) {
+        return body != null && byArray.containsKey(body);
+    }
+
+    public synchronized void clear() {
+        byHash.clear();
+        byArray.clear();
+        decodedCache.clear();
+        logicalBytes = 0;
+        storedBytes = 0;
+    }
+
+    @Override
+    public synchronized long getLogicalBodyBytes() {
+        return logicalBytes;
+    }
+
+    @Override
+    public synchronized long getStoredBodyBytes() {
+        return storedBytes;
+    }
+
+    @Override
+    public synchronized long getUniqueBodyCount() {
+        return byHash.size();
+    }
+
+    private static final class Entry {
+        private final long hash;
+        private final byte[] bytes;
+        private final int length;
+        private final boolean compressed;
+        private int references;
+
+        private Entry(long hash, byte[] bytes, int length, boolean compressed) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.length = length;
+            this.compressed = compressed;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package pl.proxion.capture;
+
+import pl.proxion.model.HeaderBytes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Zamiana przechwyconych bajtów body na tekst do wyświetlenia. Wołane w wątku UI tylko dla
+ * zaznaczonego wiersza - kodowanie znaków bierzemy z Content-Type, a treści binarne
+ * pokazujemy jako podgląd szesnastkowy zamiast dekodować je na śmieci. Body z Content-Encoding
+ * pokazujemy najpierw jako podgląd, a po rozpakowaniu w wątku dekodowania przez {@link #describeDecoded}.
+ */
+public final class BodyText {
+
+    private static final int SNIFF_BYTES = 512;
+    private static final int HEX_PREVIEW_BYTES = 256;
+
+    private BodyText() {
+    }
+
+    public static String describe(byte[] body, long totalLength, int hash, byte[] headers, String emptyText) {
+        if (body == null || body.length == 0) {
+            return totalLength == 0 ? emptyText : "[" + totalLength + " bytes not captured]";
+        }
+
+        String contentType = HeaderBytes.get(headers, "content-type");
+        String contentEncoding = HeaderBytes.get(headers, "content-encoding");
+        String truncated = totalLength > body.length
+                ? "\n[TRUNCATED - " + totalLength + " bytes total]"
+                : "";
+
+        if (ContentDecoder.isEncoded(contentEncoding)) {
+            // Podgląd do czasu, aż dekodowanie w tle (ContentDecoder) poda właściwą treść
+            return String.format("[%s-encoded body, %d bytes, crc32c %08x]%n%s%s",
+                    contentEncoding, totalLength, hash, hexPreview(body), truncated);
+        }
+        return render(body, contentType, String.format("%d bytes, crc32c %08x", totalLength, hash)) + truncated;
+    }
+
+    /**
+     * Tekst body po zdjęciu Content-Encoding. {@code partial} oznacza, że zakodowane body było ucięte
+     * przy przechwytywaniu, więc rozpakowaliśmy tylko jego początek.
+     */
+    public static String describeDecoded(byte[] decoded, String contentEncoding, long encodedLength,
+                                         boolean partial, byte[] headers) {
+        String contentType = HeaderBytes.get(headers, "content-type");
+        String note = String.format("[%s-decoded: %d → %d bytes%s]%n", contentEncoding, encodedLength,
+                decoded.length, partial ? ", partial - capture truncated" : "");
+        return note + render(decoded, contentType, decoded.length + " bytes decoded");
+    }
+
+    private static String render(byte[] body, String contentType, String binaryLabel) {
+        Charset charset = charsetOf(contentType);
+        if (isBinary(contentType, body, charset)) {
+            return String.format("[BINARY %s, %s]%n%s",
+                    contentType != null ? contentType : "content", binaryLabel, hexPreview(body));
+        }
+        return new String(body, charset);
+    }
+
+    static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (index >= 0) {
+                String name = contentType.substring(index + 8).trim();
+                int end = name.indexOf(';');
+                if (end >= 0) {
+                    name = name.substring(0, end);
+                }
+                name = name.replace("\"", "").trim();
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                    // Nieznane kodowanie - zostajemy przy UTF-8
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    static boolean isBinary(String contentType, byte[] body, Charset charset) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            if (type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                    || type.contains("javascript") || type.contains("x-www-form-urlencoded")) {
+                return false;
+            }
+            if (type.startsWith("image/") || type.startsWith("audio/") || type.startsWith("video/")
+                    || type.startsWith("font/") || type.contains("octet-stream") || type.contains("protobuf")
+                    || type.contains("grpc") || type.contains("zip") || type.contains("pdf")) {
+                return true;
+            }
+        }
+
+        // Nieznany typ - sprawdzamy początek: bajty zerowe albo niepoprawne UTF-8 oznaczają dane binarne
+        int sniff = Math.min(body.length, SNIFF_BYTES);
+        for (int i = 0; i < sniff; i++) {
+            if (body[i] == 0) {
+                return true;
+            }
+        }
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            return false;
+        }
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(body, 0, trimToCharBoundary(body, sniff)));
+            return false;
+        } catch (CharacterCodingException e) {
+            return true;
+        }
+    }
+
+    // Nie ucinamy wielobajtowego znaku UTF-8 na granicy próbki
+    private static int trimToCharBoundary(byte[] body, int length) {
+        if (length == body.length) {
+            return length;
+        }
+        int end = length;
+        while (end > 0 && end > length - 4 && (body[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return end;
+    }
+
+    private static String hexPreview(byte[] body) {
+        int length = Math.min(body.length, HEX_PREVIEW_BYTES);
+        StringBuilder hex = new StringBuilder(length * 3 + length / 16 + 16);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                hex.append(i % 16 == 0 ? '\n' : ' ');
+            }
+            hex.append(Character.forDigit((body[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(body[i] & 0xF, 16));
+        }
+        if (body.length > length) {
+            hex.append("\n...");
+        }
+        return hex.toString();
+    }
+}
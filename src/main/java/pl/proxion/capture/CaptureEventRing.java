@@ -0,0 +1,221 @@
+package pl.proxion.capture;
+
+import pl.proxion.model.HttpTransaction;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ograniczony bufor pierścieniowy zdarzeń przechwytywania (wielu producentów - wątki Netty,
+ * jeden konsument - wątek UI). Sloty są alokowane raz, publikacja zdarzenia nie tworzy obiektów.
+ * Kolejka w stylu Vyukova: każdy slot ma numer sekwencji mówiący, czy jest wolny czy zapełniony.
+ */
+public class CaptureEventRing {
+
+    public enum EventType {
+        REQUEST_STARTED, RESPONSE_HEADERS, COMPLETED, FAILED
+    }
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, SAMPLE, BLOCK;
+
+        public static OverflowPolicy fromString(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * Odbiorca zdarzeń wołany przez {@link #drain(EventHandler, int)}.
+     */
+    public interface EventHandler {
+        void onEvent(EventType type, HttpTransaction transaction, Throwable cause);
+    }
+
+    private static final long BLOCK_PARK_NANOS = 50_000;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final EventType[] types;
+    private final HttpTransaction[] transactions;
+    private final Throwable[] causes;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final int sampleThreshold;
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAccumulator peakDepth = new LongAccumulator(Long::max, 0);
+
+    public CaptureEventRing(int capacity, OverflowPolicy overflowPolicy, int sampleRate) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.types = new EventType[size];
+        this.transactions = new HttpTransaction[size];
+        this.causes = new Throwable[size];
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        // Próbkowanie włącza się, gdy bufor jest zapełniony w połowie
+        this.sampleThreshold = size / 2;
+    }
+
+    /**
+     * Publikuje zdarzenie z wątku Netty. Zwraca false, jeśli zdarzenie zostało pominięte.
+     */
+    public boolean publish(EventType type, HttpTransaction transaction, Throwable cause) {
+        if (overflowPolicy == OverflowPolicy.SAMPLE && !admitSample(type, transaction)) {
+            sampledOutCount.increment();
+            return false;
+        }
+
+        while (!offer(type, transaction, cause)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    // Producent zwalnia najstarszy slot i próbuje ponownie
+                    if (poll(null)) {
+                        droppedCount.increment();
+                    }
+                    break;
+                case BLOCK:
+                    blockedCount.increment();
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+                default:
+                    if (type == EventType.REQUEST_STARTED) {
+                        transaction.setSampledOut(true);
+                    }
+                    droppedCount.increment();
+                    return false;
+            }
+        }
+        publishedCount.increment();
+        return true;
+    }
+
+    private boolean admitSample(EventType type, HttpTransaction transaction) {
+        if (transaction.isSampledOut()) {
+            // Pominięte żądanie - pomijamy też resztę jego cyklu życia
+            return false;
+        }
+        if (type != EventType.REQUEST_STARTED || depth() < sampleThreshold) {
+            return true;
+        }
+        if (sampleCounter.getAndIncrement() % sampleRate == 0) {
+            return true;
+        }
+        transaction.setSampledOut(true);
+        return false;
+    }
+
+    private boolean offer(EventType type, HttpTransaction transaction, Throwable cause) {
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    types[index] = type;
+                    transactions[index] = transaction;
+                    causes[index] = cause;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private boolean poll(EventHandler handler) {
+        long position = head.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    EventType type = types[index];
+                    HttpTransaction transaction = transactions[index];
+                    Throwable cause = causes[index];
+                    transactions[index] = null;
+                    causes[index] = null;
+                    sequences.lazySet(index, position + mask + 1);
+                    if (handler != null) {
+                        handler.onEvent(type, transaction, cause);
+                    }
+                    return true;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Przekazuje do {@code maxEvents} zdarzeń odbiorcy. Wołane przez jednego konsumenta.
+     */
+    public int drain(EventHandler handler, int maxEvents) {
+        peakDepth.accumulate(depth());
+        int drained = 0;
+        while (drained < maxEvents && poll(handler)) {
+            drained++;
+        }
+        return drained;
+    }
+
+    public int depth() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOutCount.sum();
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.sum();
+    }
+
+    public long getPeakDepth() {
+        return peakDepth.get();
+    }
+
+    public String summary() {
+        return String.format("capture=%s depth=%d/%d (peak %d) published=%d dropped=%d sampledOut=%d blocked=%d",
+                overflowPolicy, depth(), getCapacity(), getPeakDepth(), getPublishedCount(),
+                getDroppedCount(), getSampledOutCount(), getBlockedCount());
+    }
+}
@@ -0,0 +1,20 @@
+package pl.proxion.capture;
+
+import pl.proxion.model.HttpTransaction;
+
+/**
+ * Cykl życia przechwyconej transakcji. Każde zdarzenie dotyczy tego samego obiektu
+ * (identyfikowanego przez {@link HttpTransaction#getId()}), więc odbiorca aktualizuje
+ * istniejący wiersz zamiast dodawać nowy. {@code completed} albo {@code failed} zgłasza tylko wątek,
+ * który wygrał {@link HttpTransaction#markCompleted()}.
+ */
+public interface CaptureListener {
+
+    void requestStarted(HttpTransaction transaction);
+
+    void responseHeaders(HttpTransaction transaction);
+
+    void completed(HttpTransaction transaction);
+
+    void failed(HttpTransaction transaction, Throwable cause);
+}
@@ -0,0 +1,468 @@
+package pl.proxion.capture;
+
+import pl.proxion.model.HttpTransaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dziennik przechwyconych transakcji na dysku: segmenty mapowane w pamięci, tylko dopisywanie.
+ * Na stercie zostają metadane wiersza, a nagłówki i body czytamy z segmentu dopiero przy wyświetlaniu.
+ * Pozycja rekordu to numer segmentu (górne 32 bity) i przesunięcie w segmencie (dolne 32 bity).
+ * Body są zapisywane raz na segment jako bloby adresowane treścią - rekord przechowuje tylko ich pozycję,
+ * a blob żyje, dopóki wskazuje na niego jakikolwiek rekord. Rekord wskazuje wyłącznie bloby ze swojego
+ * segmentu, więc segmenty znikają z dysku w kolejności zwalniania wierszy. Body powyżej progu zapisujemy
+ * skompresowane kodekiem {@link BodyCodec}; rozpakowujemy je przy odczycie, poza blokadą dziennika.
+ */
+public class CaptureLog implements BodyStorageStats {
+
+    private static final int NULL_LENGTH = -1;
+    private static final int BODY_REF_BYTES = 4 + 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, Blob> blobsByHash = new HashMap<>();
+    private final Map<Long, Blob> blobsByPosition = new HashMap<>();
+    private final BodyCodec codec;
+    private final int compressThreshold;
+    private final DecodedBodyCache decodedCache;
+    private Segment active;
+
+    private long appendedCount;
+    private long appendedBytes;
+    private long logicalBodyBytes;
+    private long storedBodyBytes;
+
+    public CaptureLog(Path directory, int segmentBytes) throws IOException {
+        this(directory, segmentBytes, null, Integer.MAX_VALUE, new DecodedBodyCache(0));
+    }
+
+    public CaptureLog(Path directory, int segmentBytes, BodyCodec codec, int compressThreshold,
+                      DecodedBodyCache decodedCache) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+        this.decodedCache = decodedCache;
+    }
+
+    public long append(HttpTransaction transaction) {
+        return append(transaction, true);
+    }
+
+    /**
+     * Zapisuje nagłówki i body transakcji. Wołane po zakończeniu odpowiedzi - z wątku zapisu w tle,
+     * a przy jego przeciążeniu z wątku Netty, wtedy bez kompresji.
+     */
+    public long append(HttpTransaction transaction, boolean compress) {
+        // Nagłówki trafiają do segmentu bez przekodowania, body ewentualnie skompresowane
+        byte[] requestHeaders = transaction.getRequestHeaderBytes();
+        byte[] responseHeaders = transaction.getResponseHeaderBytes();
+        PreparedBody requestBody = prepare(transaction.getRequestBodyBytes(), compress);
+        PreparedBody responseBody = prepare(transaction.getResponseBodyBytes(), compress);
+
+        int recordLength = fieldLength(requestHeaders) + BODY_REF_BYTES + fieldLength(responseHeaders) + BODY_REF_BYTES;
+        // Najgorszy przypadek: oba body są nowe i lądują w tym samym segmencie co rekord
+        int worstCase = recordLength + storedLength(requestBody) + storedLength(responseBody);
+
+        synchronized (this) {
+            if (active == null || active.remaining() < worstCase) {
+                active = openSegment(Math.max(segmentBytes, worstCase));
+            }
+            long requestBlob = storeBlob(requestBody);
+            long responseBlob = storeBlob(responseBody);
+
+            int offset = active.position;
+            ByteBuffer buffer = active.buffer.duplicate();
+            buffer.position(offset);
+            putField(buffer, requestHeaders);
+            putBodyRef(buffer, requestBody, requestBlob);
+            putField(buffer, responseHeaders);
+            putBodyRef(buffer, responseBody, responseBlob);
+
+            active.position += recordLength;
+            active.liveRecords++;
+            appendedCount++;
+            appendedBytes += recordLength;
+            return position(active.number, offset);
+        }
+    }
+
+    private PreparedBody prepare(byte[] body, boolean compress) {
+        if (body == null) {
+            return null;
+        }
+        PreparedBody prepared = new PreparedBody(body, ContentHash.hash64(body));
+        // Kompresujemy poza blokadą i tylko body, których jeszcze nie ma w dzienniku
+        if (compress && codec != null && body.length >= compressThreshold && !hasBlob(prepared.hash)) {
+            byte[] encoded = codec.encode(body);
+            if (encoded.length < body.length - body.length / 8) {
+                prepared.encoded = encoded;
+            }
+        }
+        return prepared;
+    }
+
+    private synchronized boolean hasBlob(long hash) {
+        return blobsByHash.containsKey(hash);
+    }
+
+    private long storeBlob(PreparedBody body) {
+        if (body == null) {
+            return -1;
+        }
+        byte[] raw = body.raw;
+        logicalBodyBytes += raw.length;
+        Blob blob = blobsByHash.get(body.hash);
+        boolean same = blob != null && blob.length == raw.length && blobEquals(blob, raw);
+        if (same && segment(blob.position) == active.number) {
+            blob.references++;
+            return blob.position;
+        }
+
+        byte[] data;
+        boolean compressed;
+        if (same) {
+            // Blob ze starszego segmentu kopiujemy do bieżącego - inaczej nowe rekordy trzymałyby
+            // stary segment na dysku bez końca. Rekordy wskazują więc tylko bloby z własnego segmentu.
+            data = copyBlob(segments.get(segment(blob.position)), blob);
+            compressed = blob.compressed;
+        } else {
+            data = body.encoded != null ? body.encoded : raw;
+            compressed = body.encoded != null;
+        }
+        int offset = active.position;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset);
+        buffer.put(data);
+        active.position += data.length;
+        active.liveRecords++;
+        appendedBytes += data.length;
+        storedBodyBytes += data.length;
+
+        Blob stored = new Blob(body.hash, position(active.number, offset), raw.length, data.length, compressed);
+        stored.references = 1;
+        if (blob == null || same) {
+            // Przy kolizji skrótu zostawiamy w mapie pierwszy blob - nowy jest tylko w mapie pozycji
+            blobsByHash.put(body.hash, stored);
+        }
+        blobsByPosition.put(stored.position, stored);
+        return stored.position;
+    }
+
+    private boolean blobEquals(Blob blob, byte[] body) {
+        Segment segment = segments.get(segment(blob.position));
+        if (segment == null) {
+            return false;
+        }
+        int offset = offset(blob.position);
+        if (blob.compressed) {
+            // Rzadki przypadek (powtórzone duże body) - rozpakowanie i tak zwykle trafi w cache
+            return ByteBuffer.wrap(open(new StoredBody(blob, copyBlob(segment, blob)))).equals(ByteBuffer.wrap(body));
+        }
+        return segment.buffer.slice(offset, blob.length).equals(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Wczytuje nagłówki i body zapisane pod daną pozycją do transakcji (dekodowanie przy wyświetlaniu).
+     */
+    public void read(long position, HttpTransaction target) {
+        StoredBody requestBody;
+        StoredBody responseBody;
+        synchronized (this) {
+            Segment segment = segments.get(segment(position));
+            if (segment == null) {
+                return;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset(position));
+            target.setRequestHeaderBytes(readField(buffer));
+            requestBody = readBody(buffer);
+            target.setResponseHeaderBytes(readField(buffer));
+            responseBody = readBody(buffer);
+        }
+        target.setRequestBodyBytes(open(requestBody));
+        target.setResponseBodyBytes(open(responseBody));
+    }
+
+    private byte[] open(StoredBody body) {
+        if (body == null) {
+            return null;
+        }
+        if (!body.blob.compressed) {
+            return body.data;
+        }
+        Blob blob = body.blob;
+        return decodedCache.get(blob, () -> codec.decode(body.data, blob.length));
+    }
+
+    /**
+     * Zwalnia rekord usuniętego wiersza razem z referencjami do jego blobów.
+     * Segment bez żywych rekordów i blobów jest kasowany z dysku.
+     */
+    public synchronized void release(long position) {
+        Segment segment = segments.get(segment(position));
+        if (segment == null) {
+            return;
+        }
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset(position));
+        skipField(buffer);
+        releaseBody(buffer);
+        skipField(buffer);
+        releaseBody(buffer);
+        releaseUnit(segment);
+    }
+
+    private void releaseBody(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        long blobPosition = buffer.getLong();
+        if (length == NULL_LENGTH) {
+            return;
+        }
+        logicalBodyBytes -= length;
+        Blob blob = blobsByPosition.get(blobPosition);
+        if (blob == null || --blob.references > 0) {
+            return;
+        }
+        blobsByPosition.remove(blobPosition);
+        if (blobsByHash.get(blob.hash) == blob) {
+            blobsByHash.remove(blob.hash);
+        }
+        storedBodyBytes -= blob.storedLength;
+        decodedCache.remove(blob);
+        Segment blobSegment = segments.get(segment(blobPosition));
+        if (blobSegment != null) {
+            releaseUnit(blobSegment);
+        }
+    }
+
+    private void releaseUnit(Segment segment) {
+        segment.liveRecords--;
+        if (segment.liveRecords <= 0 && segment != active) {
+            deleteSegment(segment);
+        }
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                deleteSegment(segment);
+            }
+        }
+        blobsByHash.clear();
+        blobsByPosition.clear();
+        decodedCache.clear();
+        active = null;
+    }
+
+    private Segment openSegment(int size) {
+        int number = segments.size();
+        Path file = directory.resolve(String.format("capture-%06d.log", number));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Mapowanie pozostaje ważne po zamknięciu kanału
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Segment segment = new Segment(number, file, buffer);
+            segments.add(segment);
+            if (active != null && active.liveRecords <= 0) {
+                deleteSegment(active);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open capture segment " + file, e);
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.set(segment.number, null);
+        try {
+            // Linux pozwala usunąć zmapowany plik - pamięć zwolni GC razem z buforem
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot delete capture segment " + segment.file + ": " + e.getMessage());
+        }
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segment(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(long position) {
+        return (int) position;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private static int storedLength(PreparedBody body) {
+        if (body == null) {
+            return 0;
+        }
+        return body.encoded != null ? body.encoded.length : body.raw.length;
+    }
+
+    private static int fieldLength(byte[] bytes) {
+        return 4 + length(bytes);
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] field) {
+        if (field == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(field.length);
+            buffer.put(field);
+        }
+    }
+
+    private static void putBodyRef(ByteBuffer buffer, PreparedBody body, long blobPosition) {
+        buffer.putInt(body != null ? body.raw.length : NULL_LENGTH);
+        buffer.putLong(blobPosition);
+    }
+
+    private static byte[] readField(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void skipField(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length != NULL_LENGTH) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private StoredBody readBody(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        long blobPosition = buffer.getLong();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        Blob blob = blobsByPosition.get(blobPosition);
+        Segment segment = segments.get(segment(blobPosition));
+        if (blob == null || segment == null) {
+            return null;
+        }
+        return new StoredBody(blob, copyBlob(segment, blob));
+    }
+
+    private static byte[] copyBlob(Segment segment, Blob blob) {
+        byte[] bytes = new byte[blob.storedLength];
+        segment.buffer.get(offset(blob.position), bytes);
+        return bytes;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getLiveSegmentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            if (segment != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getAppendedCount() {
+        return appendedCount;
+    }
+
+    public synchronized long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    @Override
+    public synchronized long getLogicalBodyBytes() {
+        return logicalBodyBytes;
+    }
+
+    @Override
+    public synchronized long getStoredBodyBytes() {
+        return storedBodyBytes;
+    }
+
+    @Override
+    public synchronized long getUniqueBodyCount() {
+        return blobsByPosition.size();
+    }
+
+    private static final class Segment {
+        private final int number;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int liveRecords; // rekordy i bloby, które jeszcze ktoś wskazuje
+
+        private Segment(int number, Path file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+    }
+
+    private static final class Blob {
+        private final long hash;
+        private final long position;
+        private final int length;
+        private final int storedLength;
+        private final boolean compressed;
+        private int references;
+
+        private Blob(long hash, long position, int length, int storedLength, boolean compressed) {
+            this.hash = hash;
+            this.position = position;
+            this.length = length;
+            this.storedLength = storedLength;
+            this.compressed = compressed;
+        }
+    }
+
+    private static final class PreparedBody {
+        private final byte[] raw;
+        private final long hash;
+        private byte[] encoded;
+
+        private PreparedBody(byte[] raw, long hash) {
+            this.raw = raw;
+            this.hash = hash;
+        }
+    }
+
+    private static final class StoredBody {
+        private final Blob blob;
+        private final byte[] data;
+
+        private StoredBody(Blob blob, byte[] data) {
+            this.blob = blob;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package pl.proxion.capture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Dekodowanie Content-Encoding (gzip, deflate, br) przechwyconych body - wyłącznie na potrzeby podglądu,
+ * w tle i na żądanie. Relay nigdy nie dekoduje: w potoku Netty nie ma żadnego dekompresora.
+ */
+public final class ContentDecoder {
+
+    private static final int CHUNK = 16 * 1024;
+
+    private ContentDecoder() {
+    }
+
+    public static boolean isEncoded(String contentEncoding) {
+        return contentEncoding != null && !contentEncoding.isBlank()
+                && !contentEncoding.trim().equalsIgnoreCase("identity");
+    }
+
+    /**
+     * Dekoduje body zakodowane wg nagłówka Content-Encoding (kilka kodowań zdejmujemy od ostatniego).
+     * Ucięte body (limit przechwytywania) dekodujemy tak daleko, jak się da. Wynik ograniczamy do
+     * {@code maxBytes}, żeby "bomba" kompresyjna nie zapchała pamięci.
+     */
+    public static byte[] decode(byte[] body, String contentEncoding, int maxBytes) throws IOException {
+        String[] encodings = contentEncoding.split(",");
+        byte[] data = body;
+        for (int i = encodings.length - 1; i >= 0; i--) {
+            String encoding = encodings[i].trim().toLowerCase(Locale.ROOT);
+            switch (encoding) {
+                case "gzip":
+                case "x-gzip":
+                    data = readAll(new GZIPInputStream(new ByteArrayInputStream(data), CHUNK), maxBytes);
+                    break;
+                case "deflate":
+                    data = inflate(data, maxBytes);
+                    break;
+                case "br":
+                    data = brotli(data, maxBytes);
+                    break;
+                case "identity":
+                case "":
+                    break;
+                default:
+                    throw new IOException("Unsupported content encoding: " + encoding);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] inflate(byte[] data, int maxBytes) throws IOException {
+        // "deflate" w HTTP to formalnie zlib, ale część serwerów wysyła surowy deflate
+        try {
+            return inflate(data, false, maxBytes);
+        } catch (ZipException e) {
+            return inflate(data, true, maxBytes);
+        }
+    }
+
+    private static byte[] inflate(byte[] data, boolean raw, int maxBytes) throws IOException {
+        Inflater inflater = new Inflater(raw);
+        try {
+            return readAll(new InflaterInputStream(new ByteArrayInputStream(data), inflater, CHUNK), maxBytes);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] brotli(byte[] data, int maxBytes) throws IOException {
+        if (!Brotli.isAvailable()) {
+            throw new IOException("Brotli decoding unavailable (brotli4j not on classpath)");
+        }
+        // Dekoder Netty w osobnym EmbeddedChannel - poza potokiem relay
+        EmbeddedChannel channel = new EmbeddedChannel(new BrotliDecoder());
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(maxBytes, data.length * 4L));
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(data));
+            ByteBuf chunk;
+            while ((chunk = channel.readInbound()) != null) {
+                try {
+                    int count = Math.min(chunk.readableBytes(), maxBytes - out.size());
+                    chunk.readBytes(out, count);
+                } finally {
+                    chunk.release();
+                }
+            }
+        } catch (RuntimeException e) {
+            if (out.size() == 0) {
+                throw new IOException("Corrupted brotli body: " + e.getMessage(), e);
+            }
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in, int maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK);
+        byte[] buffer = new byte[CHUNK];
+        try (in) {
+            while (out.size() < maxBytes) {
+                int count = in.read(buffer, 0, Math.min(buffer.length, maxBytes - out.size()));
+                if (count < 0) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+            }
+        } catch (EOFException e) {
+            // Body ucięte przy przechwytywaniu - zostaje to, co zdążyliśmy rozpakować
+            if (out.size() == 0) {
+                throw e;
+            }
+        }
+        return out.toByteArray();
+    }
+}
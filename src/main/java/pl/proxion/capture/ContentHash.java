@@ -0,0 +1,53 @@
+package pl.proxion.capture;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Szybki 64-bitowy skrót treści (MurmurHash64A) do adresowania body po zawartości.
+ * Przy trafieniu i tak porównujemy bajty, więc kolizje nie psują danych.
+ */
+public final class ContentHash {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    private ContentHash() {
+    }
+
+    public static long hash64(byte[] data) {
+        int length = data.length;
+        long h = 0x9747b28cL ^ (length * M);
+
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            long k = (long) LONGS.get(data, i << 3);
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+
+        int tail = blocks << 3;
+        switch (length & 7) {
+            case 7: h ^= (long) (data[tail + 6] & 0xFF) << 48;
+            case 6: h ^= (long) (data[tail + 5] & 0xFF) << 40;
+            case 5: h ^= (long) (data[tail + 4] & 0xFF) << 32;
+            case 4: h ^= (long) (data[tail + 3] & 0xFF) << 24;
+            case 3: h ^= (long) (data[tail + 2] & 0xFF) << 16;
+            case 2: h ^= (long) (data[tail + 1] & 0xFF) << 8;
+            case 1: h ^= data[tail] & 0xFF;
+                h *= M;
+            default:
+                break;
+        }
+
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}
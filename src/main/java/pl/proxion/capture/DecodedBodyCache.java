@@ -0,0 +1,76 @@
+package pl.proxion.capture;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Mały cache LRU rozpakowanych body - przełączanie się między kilkoma wierszami nie rozpakowuje
+ * ich za każdym razem. Ograniczony sumą bajtów. Kluczem jest wpis magazynu (porównywany po tożsamości)
+ * albo identyfikator transakcji przy rozpakowanym Content-Encoding.
+ */
+public class DecodedBodyCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Object, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public DecodedBodyCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public byte[] get(Object key, Supplier<byte[]> decoder) {
+        synchronized (this) {
+            byte[] cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        // Rozpakowujemy poza blokadą - równoległe filtrowanie nie czeka na siebie nawzajem
+        byte[] decoded = decoder.get();
+        put(key, decoded);
+        return decoded;
+    }
+
+    private synchronized void put(Object key, byte[] decoded) {
+        if (decoded.length > maxBytes) {
+            return;
+        }
+        byte[] previous = entries.put(key, decoded);
+        bytes += decoded.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<Object, byte[]>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void remove(Object key) {
+        byte[] removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.length;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
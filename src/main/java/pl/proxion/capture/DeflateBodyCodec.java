@@ -0,0 +1,66 @@
+package pl.proxion.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Kompresja body algorytmem Deflate (bez nagłówka zlib). Deflater i Inflater trzymają pamięć natywną,
+ * więc każdy wątek używa ponownie własnej instancji.
+ */
+public class DeflateBodyCodec implements BodyCodec {
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    public DeflateBodyCodec(int level) {
+        int checkedLevel = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(checkedLevel, true));
+    }
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) {
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded, int rawLength) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(encoded);
+        byte[] raw = new byte[rawLength];
+        try {
+            int position = 0;
+            while (position < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(raw, position, rawLength - position);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                position += count;
+            }
+            if (position != rawLength) {
+                throw new IllegalStateException("Compressed body is truncated: " + position + " of " + rawLength);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed body", e);
+        }
+    }
+}
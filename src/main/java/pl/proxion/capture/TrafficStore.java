@@ -0,0 +1,158 @@
+package pl.proxion.capture;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import pl.proxion.model.HttpTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ograniczony magazyn przechwyconych transakcji. Pilnuje limitu wierszy i budżetu bajtów body,
+ * usuwając najstarsze wpisy. Używany wyłącznie z wątku UI. Z magazynem body ({@link BodyStore})
+ * body współdzielone przez wiele wierszy liczymy do budżetu tylko raz.
+ */
+public class TrafficStore {
+
+    private final ObservableList<HttpTransaction> rows = FXCollections.observableArrayList();
+    private final List<HttpTransaction> evicted = new ArrayList<>();
+    private final int maxRows;
+    private final long maxBodyBytes;
+    private final CaptureLog captureLog;
+    private final BodyStore bodyStore;
+
+    private long retainedBodyBytes;
+    private long evictedCount;
+
+    public TrafficStore(int maxRows, long maxBodyBytes, CaptureLog captureLog, BodyStore bodyStore) {
+        this.maxRows = Math.max(1, maxRows);
+        this.maxBodyBytes = Math.max(0, maxBodyBytes);
+        this.captureLog = captureLog;
+        this.bodyStore = bodyStore;
+    }
+
+    /**
+     * Dodaje paczkę wierszy i zwraca te, które wypadły z magazynu (lista ważna do następnego wywołania).
+     */
+    public List<HttpTransaction> addAll(List<HttpTransaction> batch) {
+        for (HttpTransaction transaction : batch) {
+            // Różnica, bo update() mógł już policzyć wiersz z tej samej paczki
+            long size = measure(transaction);
+            retainedBodyBytes += size - transaction.getRetainedBodyBytes();
+            transaction.setRetainedBodyBytes(size);
+        }
+        rows.addAll(batch);
+        return evictIfNeeded();
+    }
+
+    /**
+     * Przelicza rozmiar body po zmianie transakcji (np. po zakończeniu odpowiedzi).
+     */
+    public void update(HttpTransaction transaction) {
+        if (transaction.isEvicted() || !transaction.isListed()) {
+            return;
+        }
+        long size = measure(transaction);
+        retainedBodyBytes += size - transaction.getRetainedBodyBytes();
+        transaction.setRetainedBodyBytes(size);
+    }
+
+    public List<HttpTransaction> evictIfNeeded() {
+        evicted.clear();
+        int count = 0;
+        int size = rows.size();
+        while (count < size && (size - count > maxRows || usedBodyBytes() > maxBodyBytes)) {
+            HttpTransaction oldest = rows.get(count);
+            retainedBodyBytes -= oldest.getRetainedBodyBytes();
+            oldest.setEvicted(true);
+            releaseStorage(oldest);
+            evicted.add(oldest);
+            count++;
+        }
+        if (count > 0) {
+            // Najstarsze są na początku listy - jedno zdarzenie zmiany zamiast usuwania po jednym
+            rows.remove(0, count);
+            evictedCount += count;
+        }
+        return evicted;
+    }
+
+    public void clear() {
+        for (HttpTransaction transaction : rows) {
+            transaction.setEvicted(true);
+            releaseStorage(transaction);
+        }
+        rows.clear();
+        retainedBodyBytes = 0;
+    }
+
+    /**
+     * Zwalnia miejsce wiersza w dzienniku i w BodyStore - najwyżej raz.
+     * Wiersz usunięty w trakcie zapisu w tle zwalnia dopiero obsługa jego zdarzenia w UI.
+     */
+    public void releaseStorage(HttpTransaction transaction) {
+        if (!transaction.isStored() || transaction.isStorageReleased()) {
+            return;
+        }
+        transaction.setStorageReleased(true);
+        if (captureLog != null && transaction.getLogPosition() >= 0) {
+            captureLog.release(transaction.getLogPosition());
+        }
+        if (bodyStore != null) {
+            bodyStore.release(transaction.getRequestBodyBytes());
+            bodyStore.release(transaction.getResponseBodyBytes());
+        }
+    }
+
+    // Body z magazynu liczymy raz, przez getStoredBodyBytes(), a nie przy każdym wierszu
+    private long usedBodyBytes() {
+        return bodyStore != null ? retainedBodyBytes + bodyStore.getStoredBodyBytes() : retainedBodyBytes;
+    }
+
+    private long measure(HttpTransaction transaction) {
+        if (transaction.getLogPosition() >= 0) {
+            // Nagłówki i body są już w dzienniku - rozmiar policzył wątek zapisu przed zwolnieniem pól
+            return transaction.getLoggedBytes();
+        }
+        long headers = length(transaction.getRequestHeaderBytes()) + length(transaction.getResponseHeaderBytes());
+        return headers + ownBodyLength(transaction.getRequestBodyBytes())
+                + ownBodyLength(transaction.getResponseBodyBytes());
+    }
+
+    private long ownBodyLength(byte[] body) {
+        return bodyStore != null && bodyStore.contains(body) ? 0 : length(body);
+    }
+
+    private static long length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    public ObservableList<HttpTransaction> getRows() {
+        return rows;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getRetainedBodyBytes() {
+        return usedBodyBytes();
+    }
+
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public String occupancy() {
+        return String.format("%d / %d rows · %.1f / %.1f MB · %d evicted",
+                rows.size(), maxRows, usedBodyBytes() / 1048576.0, maxBodyBytes / 1048576.0, evictedCount);
+    }
+}
@@ -0,0 +1,385 @@
+package pl.proxion.capture;
+
+import io.netty.util.collection.IntObjectHashMap;
+import pl.proxion.model.HttpTransaction;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Odwrócony indeks trigramów do wyszukiwania w ruchu. Listy wystąpień to rosnące numery dokumentów
+ * kodowane jako różnice w formacie varint. Indeks jest podzielony na generacje - magazyn usuwa
+ * najstarsze wiersze jako pierwsze, więc cała generacja znika, gdy jej ostatni wiersz wypadnie.
+ * Trigramy liczy wątek Netty ({@link #extract}), a dopisywanie i wyszukiwanie odbywa się w wątku UI.
+ */
+public class TrigramIndex {
+
+    public static final int GRAM = 3;
+
+    private static final int GENERATION_SIZE = 65536;
+    private static final int CHAR_BITS = 10;
+    private static final int CHAR_MASK = (1 << CHAR_BITS) - 1;
+
+    private final ArrayDeque<Generation> generations = new ArrayDeque<>();
+    private int nextDoc;
+
+    // Bufory wielokrotnego użytku dla zapytań (tylko wątek UI)
+    private int[] queryGrams = new int[16];
+    private int[] candidates = new int[1024];
+    private Posting[] postings = new Posting[16];
+
+    /**
+     * Wylicza posortowane, unikalne trigramy pól transakcji. Trigramy nie przekraczają granic pól.
+     * Obejmują wszystkie pola przeszukiwane tekstem wolnym (z body żądania), więc wiersz spoza
+     * kandydatów z indeksu na pewno nie pasuje.
+     */
+    public static int[] extract(HttpTransaction transaction) {
+        GramBuffer buffer = new GramBuffer();
+        buffer.addText(transaction.getMethod());
+        buffer.addText(transaction.getUrl());
+        buffer.addBytes(transaction.getRequestHeaderBytes());
+        buffer.addBytes(transaction.getResponseHeaderBytes());
+        buffer.addText(String.valueOf(transaction.getStatusCode()));
+        buffer.addBytes(transaction.getRequestBodyBytes());
+        return buffer.toSortedUnique();
+    }
+
+    /**
+     * Sprawdza, czy wszystkie trigramy zapytania występują w posortowanej tablicy trigramów wiersza.
+     */
+    public static boolean containsAll(int[] rowGrams, String lowerQuery) {
+        for (int i = 0; i + GRAM <= lowerQuery.length(); i++) {
+            if (Arrays.binarySearch(rowGrams, gram(lowerQuery, i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wyszukiwanie podciągu bez rozróżniania wielkości liter i bez kopiowania tekstu.
+     */
+    public static boolean containsIgnoreCase(String text, String lowerQuery) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - lowerQuery.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, lowerQuery, 0, lowerQuery.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Jak wyżej, dla bajtów traktowanych jako ISO-8859-1 (nagłówki, body bez dekodowania).
+     */
+    public static boolean containsIgnoreCase(byte[] data, String lowerQuery) {
+        if (data == null) {
+            return false;
+        }
+        int last = data.length - lowerQuery.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < lowerQuery.length()
+                    && Character.toLowerCase((char) (data[i + j] & 0xFF)) == lowerQuery.charAt(j)) {
+                j++;
+            }
+            if (j == lowerQuery.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int gram(CharSequence text, int index) {
+        return (fold(text.charAt(index)) << (2 * CHAR_BITS))
+                | (fold(text.charAt(index + 1)) << CHAR_BITS)
+                | fold(text.charAt(index + 2));
+    }
+
+    private static int gram(byte[] data, int index) {
+        return (fold((char) (data[index] & 0xFF)) << (2 * CHAR_BITS))
+                | (fold((char) (data[index + 1] & 0xFF)) << CHAR_BITS)
+                | fold((char) (data[index + 2] & 0xFF));
+    }
+
+    private static int fold(char c) {
+        return Character.toLowerCase(c) & CHAR_MASK;
+    }
+
+    /**
+     * Dopisuje dokument. Zwraca jego numer, potrzebny przy usuwaniu.
+     */
+    public int add(HttpTransaction transaction, int[] grams) {
+        Generation generation = generations.peekLast();
+        if (generation == null || generation.isFull()) {
+            generation = new Generation(nextDoc);
+            generations.addLast(generation);
+        }
+        int doc = nextDoc++;
+        generation.add(doc, transaction, grams);
+        return doc;
+    }
+
+    public void remove(int doc) {
+        for (Generation generation : generations) {
+            if (generation.contains(doc)) {
+                generation.remove(doc);
+                break;
+            }
+        }
+        // Martwe generacje z początku kolejki zwalniamy w całości
+        while (!generations.isEmpty() && generations.peekFirst().isDead()) {
+            generations.pollFirst();
+        }
+    }
+
+    public void clear() {
+        generations.clear();
+    }
+
+    /**
+     * Dopisuje do {@code out} kandydatów zawierających wszystkie trigramy zapytania (w kolejności dopisania).
+     * Zwraca false, gdy zapytanie jest za krótkie, by użyć indeksu.
+     */
+    public boolean search(String lowerQuery, List<HttpTransaction> out) {
+        int gramCount = lowerQuery.length() - GRAM + 1;
+        if (gramCount <= 0) {
+            return false;
+        }
+        if (queryGrams.length < gramCount) {
+            queryGrams = new int[gramCount];
+            postings = new Posting[gramCount];
+        }
+        for (int i = 0; i < gramCount; i++) {
+            queryGrams[i] = gram(lowerQuery, i);
+        }
+
+        for (Generation generation : generations) {
+            generation.search(this, gramCount, out);
+        }
+        return true;
+    }
+
+    public int getDocumentCount() {
+        int count = 0;
+        for (Generation generation : generations) {
+            count += generation.liveCount;
+        }
+        return count;
+    }
+
+    public long getPostingBytes() {
+        long bytes = 0;
+        for (Generation generation : generations) {
+            bytes += generation.postingBytes;
+        }
+        return bytes;
+    }
+
+    private static final class Generation {
+        private final int baseDoc;
+        private final HttpTransaction[] documents = new HttpTransaction[GENERATION_SIZE];
+        private final IntObjectHashMap<Posting> postings = new IntObjectHashMap<>();
+        private int size;
+        private int liveCount;
+        private long postingBytes;
+
+        private Generation(int baseDoc) {
+            this.baseDoc = baseDoc;
+        }
+
+        private boolean isFull() {
+            return size == GENERATION_SIZE;
+        }
+
+        private boolean isDead() {
+            return isFull() && liveCount == 0;
+        }
+
+        private boolean contains(int doc) {
+            return doc >= baseDoc && doc < baseDoc + size;
+        }
+
+        private void add(int doc, HttpTransaction transaction, int[] grams) {
+            int local = doc - baseDoc;
+            documents[local] = transaction;
+            size++;
+            liveCount++;
+            for (int gram : grams) {
+                Posting posting = postings.get(gram);
+                if (posting == null) {
+                    posting = new Posting();
+                    postings.put(gram, posting);
+                }
+                postingBytes -= posting.data.length;
+                posting.append(local);
+                postingBytes += posting.data.length;
+            }
+        }
+
+        private void remove(int doc) {
+            int local = doc - baseDoc;
+            if (documents[local] != null) {
+                documents[local] = null;
+                liveCount--;
+            }
+        }
+
+        private void search(TrigramIndex index, int gramCount, List<HttpTransaction> out) {
+            if (liveCount == 0) {
+                return;
+            }
+            Posting[] lists = index.postings;
+            for (int i = 0; i < gramCount; i++) {
+                Posting posting = postings.get(index.queryGrams[i]);
+                if (posting == null) {
+                    return;
+                }
+                lists[i] = posting;
+            }
+            // Zaczynamy od najkrótszej listy, żeby przecięcie szybko malało
+            int shortest = 0;
+            for (int i = 1; i < gramCount; i++) {
+                if (lists[i].count < lists[shortest].count) {
+                    shortest = i;
+                }
+            }
+
+            if (index.candidates.length < lists[shortest].count) {
+                index.candidates = new int[Math.max(lists[shortest].count, index.candidates.length * 2)];
+            }
+            int[] candidates = index.candidates;
+            int candidateCount = lists[shortest].decodeInto(candidates);
+
+            for (int i = 0; i < gramCount && candidateCount > 0; i++) {
+                if (i != shortest) {
+                    candidateCount = lists[i].retainAll(candidates, candidateCount);
+                }
+            }
+
+            for (int i = 0; i < candidateCount; i++) {
+                HttpTransaction transaction = documents[candidates[i]];
+                if (transaction != null) {
+                    out.add(transaction);
+                }
+            }
+            Arrays.fill(lists, 0, gramCount, null);
+        }
+    }
+
+    private static final class Posting {
+        private byte[] data = new byte[4];
+        private int length;
+        private int count;
+        private int lastDoc = -1;
+
+        private void append(int doc) {
+            if (doc == lastDoc) {
+                return;
+            }
+            int delta = doc - lastDoc;
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            lastDoc = doc;
+            count++;
+        }
+
+        private int decodeInto(int[] out) {
+            int doc = -1;
+            int position = 0;
+            int n = 0;
+            while (position < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                out[n++] = doc;
+            }
+            return n;
+        }
+
+        /**
+         * Zostawia w {@code candidates} tylko dokumenty obecne na tej liście (scalanie dwóch posortowanych ciągów).
+         */
+        private int retainAll(int[] candidates, int candidateCount) {
+            int doc = -1;
+            int position = 0;
+            int kept = 0;
+            int c = 0;
+            while (c < candidateCount && position < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                while (c < candidateCount && candidates[c] < doc) {
+                    c++;
+                }
+                if (c < candidateCount && candidates[c] == doc) {
+                    candidates[kept++] = doc;
+                    c++;
+                }
+            }
+            return kept;
+        }
+    }
+
+    private static final class GramBuffer {
+        private int[] grams = new int[256];
+        private int size;
+
+        private void addText(String text) {
+            if (text == null) {
+                return;
+            }
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                if (size == grams.length) {
+                    grams = Arrays.copyOf(grams, size * 2);
+                }
+                grams[size++] = gram(text, i);
+            }
+        }
+
+        private void addBytes(byte[] data) {
+            if (data == null) {
+                return;
+            }
+            for (int i = 0; i + GRAM <= data.length; i++) {
+                if (size == grams.length) {
+                    grams = Arrays.copyOf(grams, size * 2);
+                }
+                grams[size++] = gram(data, i);
+            }
+        }
+
+        private int[] toSortedUnique() {
+            Arrays.sort(grams, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || grams[i] != grams[unique - 1]) {
+                    grams[unique++] = grams[i];
+                }
+            }
+            return Arrays.copyOf(grams, unique);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package pl.proxion.capture.query;
+
+import pl.proxion.model.HttpTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Równoległe sprawdzenie zapytania na migawce wierszy (fork/join). Zadanie przerywa pracę,
+ * gdy zostanie zastąpione nowszym zapytaniem - sprawdzamy to co kilkaset wierszy.
+ */
+public final class ParallelFilter extends RecursiveAction {
+
+    private static final int CHUNK_ROWS = 2048;
+    private static final int CANCEL_CHECK_ROWS = 256;
+
+    private final List<HttpTransaction> rows;
+    private final int from;
+    private final int to;
+    private final boolean[] matched;
+    private final TrafficQuery query;
+    private final BooleanSupplier cancelled;
+
+    private ParallelFilter(List<HttpTransaction> rows, int from, int to, boolean[] matched,
+                           TrafficQuery query, BooleanSupplier cancelled) {
+        this.rows = rows;
+        this.from = from;
+        this.to = to;
+        this.matched = matched;
+        this.query = query;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Zwraca pasujące wiersze w kolejności migawki albo null, jeśli zapytanie zostało anulowane.
+     */
+    public static List<HttpTransaction> filter(List<HttpTransaction> rows, TrafficQuery query,
+                                               BooleanSupplier cancelled) {
+        boolean[] matched = new boolean[rows.size()];
+        ForkJoinPool.commonPool().invoke(new ParallelFilter(rows, 0, rows.size(), matched, query, cancelled));
+        if (cancelled.getAsBoolean()) {
+            return null;
+        }
+
+        List<HttpTransaction> result = new ArrayList<>();
+        for (int i = 0; i < matched.length; i++) {
+            if (matched[i]) {
+                result.add(rows.get(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void compute() {
+        if (cancelled.getAsBoolean()) {
+            return;
+        }
+        if (to - from > CHUNK_ROWS) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParallelFilter(rows, from, middle, matched, query, cancelled),
+                    new ParallelFilter(rows, middle, to, matched, query, cancelled));
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CANCEL_CHECK_ROWS == 0 && i > from && cancelled.getAsBoolean()) {
+                return;
+            }
+            matched[i] = query.test(rows.get(i));
+        }
+    }
+}
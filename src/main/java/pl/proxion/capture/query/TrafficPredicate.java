@@ -0,0 +1,12 @@
+package pl.proxion.capture.query;
+
+import pl.proxion.model.HttpTransaction;
+
+/**
+ * Skompilowany warunek filtra ruchu. Implementacje nie alokują przy sprawdzaniu wiersza.
+ */
+@FunctionalInterface
+public interface TrafficPredicate {
+
+    boolean test(HttpTransaction transaction);
+}
@@ -0,0 +1,344 @@
+package pl.proxion.capture.query;
+
+import pl.proxion.capture.TrigramIndex;
+import pl.proxion.model.HttpTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Zapytanie do ruchu, np. {@code host:api.x.com status:5xx method:POST size>1mb time>200ms -path:/health}.
+ * Tekst jest parsowany raz do drzewa warunków (wszystkie muszą być spełnione); słowa bez pola
+ * działają jak dotychczasowe wyszukiwanie tekstowe. Nieznane pola i błędne wartości też traktujemy
+ * jako zwykły tekst, żeby wpisywanie w polu wyszukiwania nigdy nie kończyło się błędem.
+ */
+public class TrafficQuery {
+
+    public static final TrafficQuery MATCH_ALL = new TrafficQuery("", new TrafficPredicate[0], null);
+
+    /**
+     * Dopasowanie tekstu wolnego (metoda, URL, nagłówki, body, status) - dostarcza je kontroler,
+     * bo może wymagać sięgnięcia do dziennika przechwytywania.
+     */
+    @FunctionalInterface
+    public interface TextMatcher {
+        boolean matches(HttpTransaction transaction, String lowerText);
+    }
+
+    private final String source;
+    private final TrafficPredicate[] predicates;
+    private final String indexTerm;
+
+    private TrafficQuery(String source, TrafficPredicate[] predicates, String indexTerm) {
+        this.source = source;
+        this.predicates = predicates;
+        this.indexTerm = indexTerm;
+    }
+
+    public static TrafficQuery compile(String text, TextMatcher textMatcher) {
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.isEmpty()) {
+            return MATCH_ALL;
+        }
+
+        List<TrafficPredicate> predicates = new ArrayList<>();
+        String indexTerm = null;
+        for (String token : tokenize(trimmed)) {
+            boolean negated = token.length() > 1 && token.charAt(0) == '-';
+            String body = negated ? token.substring(1) : token;
+
+            Compiled compiled = compileTerm(body, textMatcher);
+            if (compiled == null) {
+                continue;
+            }
+            if (negated) {
+                TrafficPredicate inner = compiled.predicate;
+                predicates.add(transaction -> !inner.test(transaction));
+            } else {
+                predicates.add(compiled.predicate);
+                // Najdłuższy pozytywny fragment tekstu daje najkrótszą listę kandydatów z indeksu
+                if (compiled.indexTerm != null && compiled.indexTerm.length() >= TrigramIndex.GRAM
+                        && (indexTerm == null || compiled.indexTerm.length() > indexTerm.length())) {
+                    indexTerm = compiled.indexTerm;
+                }
+            }
+        }
+        return new TrafficQuery(trimmed, predicates.toArray(new TrafficPredicate[0]), indexTerm);
+    }
+
+    public boolean test(HttpTransaction transaction) {
+        for (TrafficPredicate predicate : predicates) {
+            if (!predicate.test(transaction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isMatchAll() {
+        return predicates.length == 0;
+    }
+
+    /**
+     * Fragment tekstu (małymi literami), który musi wystąpić w dopasowanym wierszu - do zawężenia
+     * kandydatów indeksem trigramów. Null, gdy zapytanie nie ma takiego fragmentu.
+     */
+    public String getIndexTerm() {
+        return indexTerm;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    private static final class Compiled {
+        private final TrafficPredicate predicate;
+        private final String indexTerm;
+
+        private Compiled(TrafficPredicate predicate, String indexTerm) {
+            this.predicate = predicate;
+            this.indexTerm = indexTerm;
+        }
+    }
+
+    private static Compiled compileTerm(String term, TextMatcher textMatcher) {
+        int colon = term.indexOf(':');
+        if (colon > 0 && colon < term.length() - 1) {
+            Compiled compiled = compileField(term.substring(0, colon).toLowerCase(Locale.ROOT),
+                    term.substring(colon + 1));
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+
+        int operator = findOperator(term);
+        if (operator > 0 && operator < term.length() - 1) {
+            Compiled compiled = compileComparison(term.substring(0, operator).toLowerCase(Locale.ROOT),
+                    term.substring(operator));
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+
+        String lower = term.toLowerCase(Locale.ROOT);
+        return new Compiled(transaction -> textMatcher.matches(transaction, lower), lower);
+    }
+
+    private static Compiled compileField(String field, String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        switch (field) {
+            case "host":
+                return new Compiled(transaction -> hostContains(transaction.getUrl(), lower), lower);
+            case "path":
+                return new Compiled(transaction -> pathContains(transaction.getUrl(), lower), lower);
+            case "url":
+                return new Compiled(transaction ->
+                        TrigramIndex.containsIgnoreCase(transaction.getUrl(), lower), lower);
+            case "method":
+                return new Compiled(transaction -> value.equalsIgnoreCase(transaction.getMethod()), lower);
+            case "status":
+                return compileStatus(lower);
+            default:
+                return null;
+        }
+    }
+
+    private static Compiled compileStatus(String value) {
+        // "5xx" - cała klasa odpowiedzi, "404" - dokładny kod, ">=400" - porównanie
+        if (value.length() == 3 && value.endsWith("xx") && Character.isDigit(value.charAt(0))) {
+            int low = (value.charAt(0) - '0') * 100;
+            int high = low + 99;
+            return new Compiled(transaction ->
+                    transaction.getStatusCode() >= low && transaction.getStatusCode() <= high, null);
+        }
+        if (!value.isEmpty() && !Character.isDigit(value.charAt(0))) {
+            return compileComparison("status", value);
+        }
+        try {
+            int code = Integer.parseInt(value);
+            return new Compiled(transaction -> transaction.getStatusCode() == code, null);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Compiled compileComparison(String field, String expression) {
+        int operatorLength = expression.length() > 1 && expression.charAt(1) == '=' ? 2 : 1;
+        String operator = expression.substring(0, operatorLength);
+        String value = expression.substring(operatorLength).trim().toLowerCase(Locale.ROOT);
+        if (value.isEmpty()) {
+            return null;
+        }
+
+        long threshold;
+        try {
+            switch (field) {
+                case "size":
+                    threshold = parseSize(value);
+                    break;
+                case "time":
+                    threshold = parseMillis(value);
+                    break;
+                case "status":
+                    threshold = Long.parseLong(value);
+                    break;
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Comparison comparison = Comparison.of(operator);
+        if (comparison == null) {
+            return null;
+        }
+        switch (field) {
+            case "size":
+                return new Compiled(transaction -> comparison.test(transaction.getBytesReceived(), threshold), null);
+            case "time":
+                return new Compiled(transaction -> comparison.test(transaction.getDurationMillis(), threshold), null);
+            default:
+                return new Compiled(transaction -> comparison.test(transaction.getStatusCode(), threshold), null);
+        }
+    }
+
+    private enum Comparison {
+        GT, GE, LT, LE, EQ;
+
+        static Comparison of(String operator) {
+            switch (operator) {
+                case ">": return GT;
+                case ">=": return GE;
+                case "<": return LT;
+                case "<=": return LE;
+                case "=": return EQ;
+                default: return null;
+            }
+        }
+
+        boolean test(long actual, long threshold) {
+            switch (this) {
+                case GT: return actual > threshold;
+                case GE: return actual >= threshold;
+                case LT: return actual < threshold;
+                case LE: return actual <= threshold;
+                default: return actual == threshold;
+            }
+        }
+    }
+
+    private static int findOperator(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '>' || c == '<' || c == '=') {
+                return i;
+            }
+            if (!Character.isLetter(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    static long parseSize(String value) {
+        long multiplier = 1;
+        if (value.endsWith("gb") || value.endsWith("g")) {
+            multiplier = 1024L * 1024 * 1024;
+        } else if (value.endsWith("mb") || value.endsWith("m")) {
+            multiplier = 1024L * 1024;
+        } else if (value.endsWith("kb") || value.endsWith("k")) {
+            multiplier = 1024L;
+        }
+        return (long) (Double.parseDouble(stripUnit(value)) * multiplier);
+    }
+
+    static long parseMillis(String value) {
+        if (value.endsWith("ms")) {
+            return Long.parseLong(value.substring(0, value.length() - 2));
+        }
+        if (value.endsWith("s")) {
+            return (long) (Double.parseDouble(value.substring(0, value.length() - 1)) * 1000);
+        }
+        return Long.parseLong(value);
+    }
+
+    private static String stripUnit(String value) {
+        int end = value.length();
+        while (end > 0 && Character.isLetter(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    // Host i ścieżka wyznaczane indeksami w URL - bez tworzenia podciągów
+    static boolean hostContains(String url, String lowerValue) {
+        if (url == null) {
+            return false;
+        }
+        int start = hostStart(url);
+        int end = hostEnd(url, start);
+        return regionContains(url, start, end, lowerValue);
+    }
+
+    static boolean pathContains(String url, String lowerValue) {
+        if (url == null) {
+            return false;
+        }
+        int start = url.indexOf('/', hostStart(url));
+        if (start < 0) {
+            return false;
+        }
+        int end = url.indexOf('?', start);
+        return regionContains(url, start, end < 0 ? url.length() : end, lowerValue);
+    }
+
+    private static int hostStart(String url) {
+        int scheme = url.indexOf("://");
+        return scheme < 0 ? 0 : scheme + 3;
+    }
+
+    private static int hostEnd(String url, int start) {
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == ':' || c == '?') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private static boolean regionContains(String text, int start, int end, String lowerValue) {
+        int last = end - lowerValue.length();
+        for (int i = start; i <= last; i++) {
+            if (text.regionMatches(true, i, lowerValue, 0, lowerValue.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
@@ -1,20 +1,55 @@
 package pl.proxion.controller;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.VBox;
+import pl.proxion.capture.BodyCodec;
+import pl.proxion.capture.BodyStorageStats;
+import pl.proxion.capture.BodyStore;
+import pl.proxion.capture.BodyText;
+import pl.proxion.capture.CaptureEventRing;
+import pl.proxion.capture.CaptureListener;
+import pl.proxion.capture.CaptureLog;
+import pl.proxion.capture.ContentDecoder;
+import pl.proxion.capture.DecodedBodyCache;
+import pl.proxion.capture.TrafficStore;
+import pl.proxion.capture.TrigramIndex;
+import pl.proxion.capture.query.ParallelFilter;
+import pl.proxion.capture.query.TrafficQuery;
 import pl.proxion.model.*;
+import pl.proxion.proxy.ProxyConfig;
+import pl.proxion.rewrite.RewritePlan;
+import pl.proxion.rewrite.RewriteRuleSet;
 import pl.proxion.service.RequestSender;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class MainController {
+public class MainController implements CaptureListener {
+
+    // Kolumny liczników reguł rewrite odświeżamy raz na sekundę, a nie co klatkę
+    private static final long RULE_STATS_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
 
     public TableView<HttpTransaction> trafficTable;
     public TextArea requestDetails;
@@ -55,19 +90,76 @@ public class MainController {
     public Button addRewriteRuleButton;
     public Button editRewriteRuleButton;
     public Button deleteRewriteRuleButton;
+    public Label trafficOccupancyLabel;
+    public Label filterLatencyLabel;
+    public Label rewriteStatsLabel;
 
-    private ObservableList<HttpTransaction> trafficData = FXCollections.observableArrayList();
     public ObservableList<HttpTransaction> filteredTrafficData = FXCollections.observableArrayList();
     private ObservableList<Header> headersData = FXCollections.observableArrayList();
     private ObservableList<SavedRequest> requestHistory = FXCollections.observableArrayList();
     private ObservableList<RequestCollection> collections = FXCollections.observableArrayList();
     private ExecutorService executorService = Executors.newCachedThreadPool();
     private String currentFilter = "";
+    private TrafficQuery currentQuery = TrafficQuery.MATCH_ALL;
+
+    // Filtrowanie w tle: nowsze zapytanie anuluje starsze przez numer generacji
+    private final ExecutorService filterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "proxion-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong filterGeneration = new AtomicLong();
+    private final List<HttpTransaction> lateRows = new ArrayList<>();
+    private final Set<HttpTransaction> lateRefreshed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean filterPending;
+    private double maxFilterInputMillis;
 
     private RewriteController rewriteController = new RewriteController();
 
+    // Zdarzenia przechwytywania z wątków Netty, zbierane przez UI raz na klatkę
+    private final ProxyConfig captureConfig = ProxyConfig.fromSystemProperties();
+    private final CaptureEventRing captureRing = new CaptureEventRing(captureConfig.getCaptureRingCapacity(),
+            CaptureEventRing.OverflowPolicy.fromString(captureConfig.getCaptureOverflowPolicy()),
+            captureConfig.getCaptureSampleRate());
+    private final BodyCodec bodyCodec = BodyCodec.forName(captureConfig.getCaptureCodec(),
+            captureConfig.getCaptureCompressLevel());
+    private final DecodedBodyCache decodedBodies = new DecodedBodyCache(captureConfig.getCaptureDecodedCacheBytes());
+    private final CaptureLog captureLog = createCaptureLog();
+    // Bez dziennika body zostają na stercie - identyczne odpowiedzi współdzielą wtedy jedną tablicę
+    private final BodyStore bodyStore = captureLog == null
+            ? new BodyStore(bodyCodec, captureConfig.getCaptureCompressThreshold(), decodedBodies)
+            : null;
+    private final BodyStorageStats bodyStats = captureLog != null ? captureLog : bodyStore;
+    private final TrafficStore trafficStore = new TrafficStore(captureConfig.getTrafficMaxRows(),
+            captureConfig.getTrafficMaxBodyBytes(), captureLog, bodyStore);
+    private final ObservableList<HttpTransaction> trafficData = trafficStore.getRows();
+    private final TrigramIndex searchIndex = new TrigramIndex();
+    private final Set<HttpTransaction> unindexedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<HttpTransaction> searchCandidates = new ArrayList<>();
+    private final CaptureEventRing.EventHandler captureEventHandler = this::onCaptureEvent;
+    private final List<HttpTransaction> pendingRows = new ArrayList<>();
+    private final Set<HttpTransaction> pendingRefresh = Collections.newSetFromMap(new IdentityHashMap<>());
+    private AnimationTimer captureDrain;
+
+    // Zapis do magazynu body (z kompresją) w tle; przy pełnej kolejce wątek Netty zapisuje sam, bez kompresji
+    private final ThreadPoolExecutor captureStoreExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, captureConfig.getCaptureStoreQueue())), runnable -> {
+        Thread thread = new Thread(runnable, "proxion-capture-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Rozpakowanie Content-Encoding do podglądu - tylko dla zaznaczonego wiersza, poza wątkiem UI
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "proxion-decode");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong decodeGeneration = new AtomicLong();
+
     public void initialize() {
         System.out.println("🔄 Initializing MainController...");
+        trackFilteredRows();
 
         if (trafficTable != null) {
             setupTableSelection();
@@ -84,6 +176,8 @@ public class MainController {
             setupRewriteRules();
             System.out.println("✅ Rewrite rules initialized");
         }
+        // Reguły działają także bez tabeli - plik wczytujemy zawsze
+        rewriteController.loadRules(Paths.get(captureConfig.getRewriteRulesFile()), captureConfig.isRewriteWatch());
 
         if (progressIndicator != null) {
             progressIndicator.setVisible(false);
@@ -91,12 +185,18 @@ public class MainController {
         }
 
         filteredTrafficData.setAll(trafficData);
+        updateOccupancy();
+        if (filterLatencyLabel != null) {
+            filterLatencyLabel.setVisible(captureConfig.isDebugOverlay());
+        }
+        startCaptureDrain();
 
         System.out.println("✅ MainController fully initialized");
     }
 
     private void setupRewriteRules() {
         rewriteTable.setItems(rewriteController.getRewriteRules());
+        rewriteController.setRewriteTable(rewriteTable);
 
         TableColumn<RewriteRule, String> originalCol = new TableColumn<>("Original Status");
         originalCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("originalStatusCode"));
@@ -110,6 +210,19 @@ public class MainController {
         endpointCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("endpointPattern"));
         endpointCol.setPrefWidth(150);
 
+        TableColumn<RewriteRule, EndpointPatternType> typeCol = new TableColumn<>("Type");
+        typeCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("patternType"));
+        typeCol.setPrefWidth(80);
+
+        TableColumn<RewriteRule, RewriteAction> actionCol = new TableColumn<>("Action");
+        actionCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("action"));
+        actionCol.setPrefWidth(110);
+
+        TableColumn<RewriteRule, String> changeCol = new TableColumn<>("Change");
+        changeCol.setCellValueFactory(cell ->
+                new javafx.beans.property.ReadOnlyStringWrapper(RewriteController.describeChange(cell.getValue())));
+        changeCol.setPrefWidth(200);
+
         TableColumn<RewriteRule, Boolean> enabledCol = new TableColumn<>("Enabled");
         enabledCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("enabled"));
         enabledCol.setPrefWidth(80);
@@ -119,7 +232,10 @@ public class MainController {
         descCol.setCellValueFactory(new javafx.scene.control.cell.PropertyValueFactory<>("description"));
         descCol.setPrefWidth(200);
 
-        rewriteTable.getColumns().addAll(originalCol, newCol, endpointCol, enabledCol, descCol);
+        rewriteTable.getColumns().addAll(actionCol, originalCol, newCol, changeCol, endpointCol, typeCol, enabledCol,
+                descCol);
+        rewriteTable.getColumns().addAll(rewriteController.createStatsColumns());
+        rewriteController.setStatsLabel(rewriteStatsLabel);
 
         if (addRewriteRuleButton != null) {
             addRewriteRuleButton.setOnAction(e -> rewriteController.showAddRewriteRuleDialog());
@@ -755,7 +871,16 @@ public class MainController {
     }
 
     public void handleClearTraffic() {
-        trafficData.clear();
+        filterGeneration.incrementAndGet();
+        filterPending = false;
+        lateRows.clear();
+        lateRefreshed.clear();
+        trafficStore.clear();
+        searchIndex.clear();
+        unindexedRows.clear();
+        pendingRows.clear();
+        pendingRefresh.clear();
+        updateOccupancy();
         filteredTrafficData.clear();
         requestDetails.clear();
         responseDetails.clear();
@@ -764,55 +889,179 @@ public class MainController {
 
     public void handleFilterTraffic() {
         if (searchField != null && !searchField.getText().isEmpty()) {
-            currentFilter = searchField.getText().toLowerCase();
-            applyFilter();
+            setFilter(searchField.getText());
         } else {
-            filteredTrafficData.setAll(trafficData);
+            setFilter("");
         }
     }
 
     public void handleSearchTraffic(String searchText) {
-        currentFilter = searchText.toLowerCase();
-        applyFilter();
+        setFilter(searchText);
+    }
+
+    private void setFilter(String text) {
+        long keystrokeNanos = System.nanoTime();
+        currentFilter = text.toLowerCase();
+        // Zapytanie kompilujemy raz - wiersze sprawdzają już gotowe drzewo warunków
+        currentQuery = TrafficQuery.compile(currentFilter, this::matchesFilter);
+        applyFilter(keystrokeNanos);
     }
 
-    private void applyFilter() {
-        if (currentFilter.isEmpty()) {
+    private void applyFilter(long startedNanos) {
+        // Każde nowe zapytanie unieważnia poprzednie, które jeszcze liczy się w tle
+        long generation = filterGeneration.incrementAndGet();
+        lateRows.clear();
+        lateRefreshed.clear();
+
+        if (currentQuery.isMatchAll()) {
+            filterPending = false;
             filteredTrafficData.setAll(trafficData);
+            recordFilterLatency(startedNanos, System.nanoTime(), trafficData.size());
             return;
         }
 
-        ObservableList<HttpTransaction> filteredList = FXCollections.observableArrayList();
+        // W wątku UI tylko migawka kandydatów (indeks nie jest współdzielony), sprawdzanie idzie w tle
+        List<HttpTransaction> snapshot;
+        String indexTerm = currentQuery.getIndexTerm();
+        searchCandidates.clear();
+        if (indexTerm != null && searchIndex.search(indexTerm, searchCandidates)) {
+            snapshot = new ArrayList<>(searchCandidates.size() + unindexedRows.size());
+            snapshot.addAll(searchCandidates);
+            // Wiersze w trakcie (jeszcze bez trigramów) sprawdzamy bezpośrednio
+            snapshot.addAll(unindexedRows);
+        } else {
+            snapshot = new ArrayList<>(trafficData);
+        }
+        searchCandidates.clear();
+
+        TrafficQuery query = currentQuery;
+        long handledNanos = System.nanoTime();
+        filterPending = true;
+        filterExecutor.execute(() -> {
+            List<HttpTransaction> result = ParallelFilter.filter(snapshot, query,
+                    () -> filterGeneration.get() != generation);
+            if (result != null) {
+                Platform.runLater(() -> publishFilterResult(generation, query, result, startedNanos, handledNanos));
+            }
+        });
+    }
+
+    private void publishFilterResult(long generation, TrafficQuery query, List<HttpTransaction> result,
+                                     long startedNanos, long handledNanos) {
+        if (generation != filterGeneration.get()) {
+            return;
+        }
+        filterPending = false;
 
-        for (HttpTransaction transaction : trafficData) {
-            if (matchesFilter(transaction, currentFilter)) {
+        List<HttpTransaction> filteredList = new ArrayList<>(result.size());
+        for (HttpTransaction transaction : result) {
+            if (!transaction.isEvicted()) {
                 filteredList.add(transaction);
             }
         }
-
         filteredTrafficData.setAll(filteredList);
+
+        // Wiersze dodane lub zakończone w trakcie liczenia sprawdzamy jeszcze raz - też w tle
+        List<HttpTransaction> late = new ArrayList<>(lateRefreshed.size() + lateRows.size());
+        late.addAll(lateRefreshed);
+        for (HttpTransaction transaction : lateRows) {
+            if (!lateRefreshed.contains(transaction)) {
+                late.add(transaction);
+            }
+        }
+        lateRows.clear();
+        lateRefreshed.clear();
+        recheckInBackground(query, late);
+
+        recordFilterLatency(startedNanos, handledNanos, filteredList.size());
         System.out.println("🔍 Filter applied: " + filteredList.size() + " items match '" + currentFilter + "'");
     }
 
+    private void recheckInBackground(TrafficQuery query, List<HttpTransaction> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        // Dopasowanie może czytać i rozpakowywać dziennik - nie robimy tego w wątku UI
+        long generation = filterGeneration.get();
+        filterExecutor.execute(() -> {
+            boolean[] matches = new boolean[rows.size()];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = query.test(rows.get(i));
+            }
+            Platform.runLater(() -> applyRecheck(generation, rows, matches));
+        });
+    }
+
+    private void applyRecheck(long generation, List<HttpTransaction> rows, boolean[] matches) {
+        // Nowsze zapytanie i tak sprawdza wszystkie wiersze z magazynu
+        if (generation != filterGeneration.get()) {
+            return;
+        }
+        for (int i = 0; i < matches.length; i++) {
+            HttpTransaction transaction = rows.get(i);
+            boolean shown = transaction.isFiltered();
+            if (matches[i] && !shown && !transaction.isEvicted()) {
+                filteredTrafficData.add(transaction);
+            } else if (!matches[i] && shown) {
+                filteredTrafficData.remove(transaction);
+            }
+        }
+    }
+
+    private void recordFilterLatency(long startedNanos, long handledNanos, int rows) {
+        if (filterLatencyLabel == null || !filterLatencyLabel.isVisible()) {
+            return;
+        }
+        double inputMillis = (handledNanos - startedNanos) / 1_000_000.0;
+        double resultMillis = (System.nanoTime() - startedNanos) / 1_000_000.0;
+        maxFilterInputMillis = Math.max(maxFilterInputMillis, inputMillis);
+        filterLatencyLabel.setText(String.format("keystroke %.1f ms (max %.1f) · results %.1f ms · %d rows",
+                inputMillis, maxFilterInputMillis, resultMillis, rows));
+    }
+
     private boolean matchesFilter(HttpTransaction transaction, String filter) {
-        if (transaction.getMethod() != null && transaction.getMethod().toLowerCase().contains(filter)) {
+        if (matchesText(transaction, filter)) {
             return true;
         }
-        if (transaction.getUrl() != null && transaction.getUrl().toLowerCase().contains(filter)) {
+        boolean stored = transaction.getLogPosition() >= 0 || hasCompressedBody(transaction);
+        if (!stored) {
+            return false;
+        }
+        // Trigramy obejmują body żądania - brak któregoś oznacza, że dziennika nie trzeba czytać
+        int[] grams = transaction.getSearchTrigrams();
+        if (grams != null && filter.length() >= TrigramIndex.GRAM && !TrigramIndex.containsAll(grams, filter)) {
+            return false;
+        }
+        return matchesText(loadDetails(transaction), filter);
+    }
+
+    private boolean matchesText(HttpTransaction transaction, String filter) {
+        if (TrigramIndex.containsIgnoreCase(transaction.getMethod(), filter)) {
             return true;
         }
-        if (transaction.getRequestHeaders() != null && transaction.getRequestHeaders().toLowerCase().contains(filter)) {
+        if (TrigramIndex.containsIgnoreCase(transaction.getUrl(), filter)) {
             return true;
         }
-        if (transaction.getRequestBody() != null && transaction.getRequestBody().toLowerCase().contains(filter)) {
+        if (TrigramIndex.containsIgnoreCase(transaction.getRequestHeaderBytes(), filter)) {
             return true;
         }
-        if (String.valueOf(transaction.getStatusCode()).contains(filter)) {
+        if (TrigramIndex.containsIgnoreCase(transaction.getResponseHeaderBytes(), filter)) {
+            return true;
+        }
+        if (!isCompressedBody(transaction.getRequestBodyBytes())
+                && TrigramIndex.containsIgnoreCase(transaction.getRequestBodyBytes(), filter)) {
+            return true;
+        }
+        if (transaction.getStatusCode() != 0 && String.valueOf(transaction.getStatusCode()).contains(filter)) {
             return true;
         }
         return false;
     }
 
+    private boolean isCompressedBody(byte[] body) {
+        return bodyStore != null && bodyStore.isCompressed(body);
+    }
+
     public void handleModifyResponse() {
         HttpTransaction selected = trafficTable.getSelectionModel().getSelectedItem();
         if (selected != null) {
@@ -821,54 +1070,418 @@ public class MainController {
     }
 
     private void openResponseModifier(HttpTransaction transaction) {
-        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-        alert.setTitle("Response Modifier");
-        alert.setHeaderText("Modify Response");
-        alert.setContentText("This feature is not implemented yet.");
-        alert.showAndWait();
+        // Reguła podmiany body odpowiedzi, zawężona do hosta i ścieżki wybranej transakcji
+        UrlParts url = UrlParts.parse(transaction.getUrl());
+        RewriteRule template = new RewriteRule();
+        template.setAction(RewriteAction.REPLACE_BODY);
+        template.setTarget(RewriteTarget.RESPONSE);
+        template.setPatternType(EndpointPatternType.GLOB);
+        template.setHostPattern(url.getHost());
+        template.setEndpointPattern(url.getPath().isEmpty() ? "/" : url.getPath());
+        template.setDescription("Modify response of " + transaction.getMethod() + " " + transaction.getUrl());
+        rewriteController.showAddRewriteRuleDialog(template);
     }
 
     public void addHttpTransaction(HttpTransaction transaction) {
-        Platform.runLater(() -> {
-            trafficData.add(transaction);
+        // Pełna transakcja w jednym zdarzeniu - trafia do tabeli przy najbliższym zbieraniu paczki
+        completed(transaction);
+    }
 
-            if (currentFilter.isEmpty() || matchesFilter(transaction, currentFilter)) {
-                filteredTrafficData.add(transaction);
+    @Override
+    public void requestStarted(HttpTransaction transaction) {
+        // Wątek Netty tylko publikuje do kolejki - UI zbiera zdarzenia paczkami raz na klatkę
+        captureRing.publish(CaptureEventRing.EventType.REQUEST_STARTED, transaction, null);
+    }
+
+    @Override
+    public void responseHeaders(HttpTransaction transaction) {
+        // Status i nagłówki są już w obiekcie - tabela pokaże je przy zakończeniu
+    }
+
+    @Override
+    public void completed(HttpTransaction transaction) {
+        storeInBackground(CaptureEventRing.EventType.COMPLETED, transaction, null);
+    }
+
+    @Override
+    public void failed(HttpTransaction transaction, Throwable cause) {
+        System.err.println("❌ Transaction failed: " + transaction.getMethod() + " " + transaction.getUrl() +
+                " - " + (cause != null ? cause.getMessage() : "unknown"));
+        storeInBackground(CaptureEventRing.EventType.FAILED, transaction, cause);
+    }
+
+    private void storeInBackground(CaptureEventRing.EventType type, HttpTransaction transaction, Throwable cause) {
+        try {
+            captureStoreExecutor.execute(() -> storeCapture(type, transaction, cause, true));
+        } catch (RejectedExecutionException e) {
+            // Zapis w tle nie nadąża (albo trwa zamykanie) - zapisujemy od razu, z pominięciem kompresji
+            storeCapture(type, transaction, cause, false);
+        }
+    }
+
+    private void storeCapture(CaptureEventRing.EventType type, HttpTransaction transaction, Throwable cause,
+                              boolean compress) {
+        extractSearchTrigrams(transaction);
+        moveToCaptureLog(transaction, compress);
+        internBodies(transaction, compress);
+        // Od tej chwili miejsce w dzienniku / BodyStore może zwolnić wątek UI
+        transaction.setStored(true);
+        // Wiersz trafia do UI dopiero po zapisie - tabela nie widzi body w połowie kompresji
+        captureRing.publish(type, transaction, cause);
+    }
+
+    private CaptureLog createCaptureLog() {
+        if (!captureConfig.isCaptureLogEnabled()) {
+            return null;
+        }
+        Path directory = Paths.get(captureConfig.getCaptureLogDirectory(),
+                "session-" + ProcessHandle.current().pid());
+        try {
+            CaptureLog log = new CaptureLog(directory, captureConfig.getCaptureLogSegmentBytes(), bodyCodec,
+                    captureConfig.getCaptureCompressThreshold(), decodedBodies);
+            System.out.println("💾 Capture log: " + directory);
+            return log;
+        } catch (Exception e) {
+            System.err.println("⚠️ Capture log disabled, keeping bodies on heap: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void extractSearchTrigrams(HttpTransaction transaction) {
+        // Trigramy liczy wątek zapisu, póki tekst jest jeszcze na stercie; UI tylko dopisuje je do indeksu
+        if (transaction.getSearchDoc() >= 0 || transaction.getSearchTrigrams() != null
+                || transaction.isSampledOut() || transaction.isEvicted()) {
+            return;
+        }
+        transaction.setSearchTrigrams(TrigramIndex.extract(transaction));
+    }
+
+    private void moveToCaptureLog(HttpTransaction transaction, boolean compress) {
+        // Nagłówki i body trafiają do segmentu, na stercie zostają tylko metadane wiersza
+        if (captureLog == null || transaction.getLogPosition() >= 0
+                || transaction.isSampledOut() || transaction.isEvicted()) {
+            return;
+        }
+        try {
+            long position = captureLog.append(transaction, compress);
+            // Rozmiar liczymy przed zwolnieniem pól - budżet magazynu widzi potem już tylko metadane
+            transaction.setLoggedBytes(length(transaction.getRequestHeaderBytes())
+                    + length(transaction.getRequestBodyBytes()) + length(transaction.getResponseHeaderBytes())
+                    + length(transaction.getResponseBodyBytes()));
+            transaction.setLogPosition(position);
+            transaction.setRequestHeaderBytes(null);
+            transaction.setRequestBodyBytes(null);
+            transaction.setResponseHeaderBytes(null);
+            transaction.setResponseBodyBytes(null);
+        } catch (Exception e) {
+            System.err.println("⚠️ Cannot write transaction to capture log: " + e.getMessage());
+        }
+    }
+
+    private static long length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    private void internBodies(HttpTransaction transaction, boolean compress) {
+        // Tryb bez dziennika: body zamieniamy na współdzieloną (i ewentualnie skompresowaną) kopię
+        if (bodyStore == null || transaction.isSampledOut() || transaction.isEvicted()) {
+            return;
+        }
+        transaction.setRequestBodyBytes(bodyStore.intern(transaction.getRequestBodyBytes(), compress));
+        transaction.setResponseBodyBytes(bodyStore.intern(transaction.getResponseBodyBytes(), compress));
+    }
+
+    private boolean hasCompressedBody(HttpTransaction transaction) {
+        return bodyStore != null && (bodyStore.isCompressed(transaction.getRequestBodyBytes())
+                || bodyStore.isCompressed(transaction.getResponseBodyBytes()));
+    }
+
+    private HttpTransaction loadDetails(HttpTransaction transaction) {
+        if (hasCompressedBody(transaction)) {
+            // Kopia z rozpakowanymi body - wiersz w tabeli zostaje w postaci skompresowanej
+            HttpTransaction details = new HttpTransaction();
+            details.setRequestHeaderBytes(transaction.getRequestHeaderBytes());
+            details.setResponseHeaderBytes(transaction.getResponseHeaderBytes());
+            details.setRequestBodyBytes(bodyStore.open(transaction.getRequestBodyBytes()));
+            details.setResponseBodyBytes(bodyStore.open(transaction.getResponseBodyBytes()));
+            return details;
+        }
+        if (captureLog == null || transaction.getLogPosition() < 0) {
+            return transaction;
+        }
+        // Body dekodujemy dopiero przy zaznaczeniu wiersza
+        HttpTransaction details = new HttpTransaction();
+        captureLog.read(transaction.getLogPosition(), details);
+        return details;
+    }
+
+    private void startCaptureDrain() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(captureConfig.getCaptureDrainIntervalMillis());
+        captureDrain = new AnimationTimer() {
+            private long lastDrain;
+            private long lastRuleStats;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastDrain >= intervalNanos) {
+                    lastDrain = now;
+                    drainCaptureEvents();
+                }
+                if (now - lastRuleStats >= RULE_STATS_REFRESH_NANOS) {
+                    lastRuleStats = now;
+                    rewriteController.refreshStats();
+                }
+            }
+        };
+        captureDrain.start();
+    }
+
+    private void drainCaptureEvents() {
+        captureRing.drain(captureEventHandler, captureRing.getCapacity());
+        if (pendingRows.isEmpty() && pendingRefresh.isEmpty()) {
+            return;
+        }
+
+        // Zakończone odpowiedzi mają już body - przeliczamy budżet przed usuwaniem najstarszych
+        for (HttpTransaction transaction : pendingRefresh) {
+            trafficStore.update(transaction);
+        }
+
+        // Jedno addAll na paczkę zamiast runLater + select + render na każde zdarzenie
+        List<HttpTransaction> evicted = trafficStore.addAll(pendingRows);
+        if (!evicted.isEmpty()) {
+            Set<HttpTransaction> evictedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            evictedSet.addAll(evicted);
+            removeEvictedFromFiltered(evicted);
+            pendingRows.removeIf(evictedSet::contains);
+            pendingRefresh.removeAll(evictedSet);
+            for (HttpTransaction transaction : evicted) {
+                if (transaction.getSearchDoc() >= 0) {
+                    searchIndex.remove(transaction.getSearchDoc());
+                }
+                unindexedRows.remove(transaction);
+            }
+        }
+        unindexedRows.addAll(pendingRows);
+        if (filterPending) {
+            // Migawka filtra w tle ich nie zawiera - dołączymy je przy publikacji wyniku
+            lateRows.addAll(pendingRows);
+            lateRefreshed.addAll(pendingRefresh);
+        }
+
+        if (currentQuery.isMatchAll()) {
+            filteredTrafficData.addAll(pendingRows);
+        } else if (!filterPending) {
+            // Filtr mógł zależeć od statusu lub body, których nie było przy requestStarted
+            List<HttpTransaction> recheck = new ArrayList<>(pendingRows.size() + pendingRefresh.size());
+            recheck.addAll(pendingRows);
+            recheck.addAll(pendingRefresh);
+            recheckInBackground(currentQuery, recheck);
+        }
+
+        boolean selectedChanged = false;
+        HttpTransaction selected = trafficTable != null ? trafficTable.getSelectionModel().getSelectedItem() : null;
+        for (HttpTransaction transaction : pendingRefresh) {
+            selectedChanged |= transaction == selected;
+        }
+
+        indexRows(pendingRows);
+        indexRows(pendingRefresh);
+
+        if (trafficTable != null && !pendingRefresh.isEmpty()) {
+            trafficTable.refresh();
+        }
+        if (selectedChanged) {
+            displayTransactionDetails(selected);
+        }
+
+        pendingRows.clear();
+        pendingRefresh.clear();
+        updateOccupancy();
+    }
+
+    private void removeEvictedFromFiltered(List<HttpTransaction> evicted) {
+        // Magazyn usuwa najstarsze wiersze, więc zwykle tworzą początek przefiltrowanej listy -
+        // wtedy jedno remove(0, k) zamiast przeglądania całej listy
+        int shownEvicted = 0;
+        for (HttpTransaction transaction : evicted) {
+            if (transaction.isFiltered()) {
+                shownEvicted++;
+            }
+        }
+        int prefix = 0;
+        while (prefix < shownEvicted && filteredTrafficData.get(prefix).isEvicted()) {
+            prefix++;
+        }
+        if (prefix == shownEvicted) {
+            if (prefix > 0) {
+                filteredTrafficData.remove(0, prefix);
+            }
+        } else {
+            // Wiersz odświeżony po zmianie filtra mógł trafić na koniec listy - wtedy jedno przejście
+            filteredTrafficData.removeIf(transaction -> transaction.isEvicted());
+        }
+    }
+
+    private void indexRows(Iterable<HttpTransaction> transactions) {
+        for (HttpTransaction transaction : transactions) {
+            int[] grams = transaction.getSearchTrigrams();
+            if (grams != null && transaction.getSearchDoc() < 0) {
+                transaction.setSearchDoc(searchIndex.add(transaction, grams));
+                transaction.setSearchTrigrams(null);
+                unindexedRows.remove(transaction);
+            }
+        }
+    }
+
+    private void updateOccupancy() {
+        if (trafficOccupancyLabel != null) {
+            String occupancy = trafficStore.occupancy();
+            if (bodyStats != null && bodyStats.getLogicalBodyBytes() > 0) {
+                occupancy += String.format(" · bodies %.2fx (%.1f MB saved)",
+                        bodyStats.getDedupRatio(), bodyStats.getSavedBodyBytes() / 1048576.0);
             }
+            trafficOccupancyLabel.setText(occupancy);
+        }
+    }
+
+    private void onCaptureEvent(CaptureEventRing.EventType type, HttpTransaction transaction, Throwable cause) {
+        if (transaction.isEvicted()) {
+            // Usunięty, gdy wątek zapisu jeszcze pracował - to, co zdążył zapisać, zwalniamy dopiero teraz
+            trafficStore.releaseStorage(transaction);
+            return;
+        }
+        if (!transaction.isListed()) {
+            // Zakończenie mogło przyjść bez requestStarted (np. usuniętego przy przepełnieniu)
+            transaction.setListed(true);
+            pendingRows.add(transaction);
+        } else if (type == CaptureEventRing.EventType.COMPLETED || type == CaptureEventRing.EventType.FAILED) {
+            pendingRefresh.add(transaction);
+        }
+    }
+
+    public TrafficStore getTrafficStore() {
+        return trafficStore;
+    }
 
-            System.out.println("📥 Added HTTP transaction: " + transaction.getMethod() + " " + transaction.getUrl());
+    public CaptureEventRing getCaptureRing() {
+        return captureRing;
+    }
 
-            trafficTable.getSelectionModel().select(transaction);
-            displayTransactionDetails(transaction);
+    private void trackFilteredRows() {
+        // Flaga na wierszu zamiast contains() - sprawdzenie obecności w przefiltrowanej liście jest O(1)
+        filteredTrafficData.addListener((ListChangeListener<HttpTransaction>) change -> {
+            while (change.next()) {
+                for (HttpTransaction transaction : change.getRemoved()) {
+                    transaction.setFiltered(false);
+                }
+                for (HttpTransaction transaction : change.getAddedSubList()) {
+                    transaction.setFiltered(true);
+                }
+            }
         });
     }
 
     private void displayTransactionDetails(HttpTransaction transaction) {
-        requestDetails.setText(formatRequest(transaction));
-        responseDetails.setText(formatResponse(transaction));
+        HttpTransaction details = loadDetails(transaction);
+        requestDetails.setText(formatRequest(transaction, details));
+        responseDetails.setText(formatResponse(transaction, details, null));
+        decodeResponseInBackground(transaction, details);
     }
 
-    private String formatRequest(HttpTransaction transaction) {
+    private void decodeResponseInBackground(HttpTransaction transaction, HttpTransaction details) {
+        long generation = decodeGeneration.incrementAndGet();
+        byte[] body = details.getResponseBodyBytes();
+        String encoding = HeaderBytes.get(details.getResponseHeaderBytes(), "content-encoding");
+        if (body == null || body.length == 0 || !ContentDecoder.isEncoded(encoding)) {
+            return;
+        }
+        boolean partial = transaction.getResponseBodyLength() > body.length;
+        decodeExecutor.execute(() -> {
+            if (generation != decodeGeneration.get()) {
+                return; // Użytkownik zaznaczył już inny wiersz
+            }
+            String text;
+            try {
+                // Klucz po identyfikatorze transakcji - ponowne zaznaczenie wiersza nie rozpakowuje go drugi raz
+                byte[] decoded = decodedBodies.get(transaction.getId(), () -> {
+                    try {
+                        return ContentDecoder.decode(body, encoding, captureConfig.getCaptureDecodeMaxBytes());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                text = BodyText.describeDecoded(decoded, encoding, transaction.getResponseBodyLength(), partial,
+                        details.getResponseHeaderBytes());
+            } catch (UncheckedIOException e) {
+                text = BodyText.describe(body, transaction.getResponseBodyLength(), transaction.getResponseBodyHash(),
+                        details.getResponseHeaderBytes(), "[EMPTY RESPONSE]")
+                        + "\n[Cannot decode " + encoding + ": " + e.getCause().getMessage() + "]";
+            }
+            String bodyText = text;
+            Platform.runLater(() -> {
+                if (generation == decodeGeneration.get()) {
+                    responseDetails.setText(formatResponse(transaction, details, bodyText));
+                }
+            });
+        });
+    }
+
+    private String formatRequest(HttpTransaction transaction, HttpTransaction details) {
         return String.format("%s %s\n\nHeaders:\n%s\n\nBody:\n%s",
                 transaction.getMethod(),
                 transaction.getUrl(),
-                transaction.getRequestHeaders(),
-                transaction.getRequestBody());
+                details.getRequestHeaders(),
+                BodyText.describe(details.getRequestBodyBytes(), transaction.getRequestBodyLength(),
+                        transaction.getRequestBodyHash(), details.getRequestHeaderBytes(), ""));
     }
 
-    private String formatResponse(HttpTransaction transaction) {
+    private String formatResponse(HttpTransaction transaction, HttpTransaction details, String decodedBody) {
         String statusInfo = transaction.isModified() ?
                 String.format("Status: %d → %d (MODIFIED)", transaction.getOriginalStatusCode(), transaction.getStatusCode()) :
                 String.format("Status: %d", transaction.getStatusCode());
 
+        if (transaction.getDurationMillis() > 0) {
+            statusInfo += String.format("\nTransfer: %d bytes sent, %d bytes received, %d ms",
+                    transaction.getBytesSent(), transaction.getBytesReceived(), transaction.getDurationMillis());
+        }
+
+        String body = decodedBody != null ? decodedBody :
+                BodyText.describe(details.getResponseBodyBytes(), transaction.getResponseBodyLength(),
+                        transaction.getResponseBodyHash(), details.getResponseHeaderBytes(), "[EMPTY RESPONSE]");
+        if (transaction.getIncompleteCause() != null) {
+            // Serwer zerwał połączenie w trakcie - body jest tylko początkiem odpowiedzi
+            statusInfo += " (INCOMPLETE)";
+            body += "\n[INCOMPLETE - " + transaction.getIncompleteCause() + "]";
+        }
+
         return String.format("%s\n\nHeaders:\n%s\n\nBody:\n%s",
                 statusInfo,
-                transaction.getResponseHeaders(),
-                transaction.getResponseBody());
+                details.getResponseHeaders(),
+                body);
     }
 
-    public int applyStatusCodeRewrite(int originalStatusCode, String url) {
-        return rewriteController.applyRewriteRules(originalStatusCode, url);
+    /**
+     * Bieżąca migawka reguł - odpowiedź czyta ją raz i używa do wszystkich swoich reguł.
+     */
+    public RewriteRuleSet getCompiledRules() {
+        return rewriteController.getCompiledRules();
+    }
+
+    public int applyStatusCodeRewrite(RewriteRuleSet rules, int originalStatusCode, String url) {
+        return rewriteController.applyRewriteRules(rules, originalStatusCode, url);
+    }
+
+    public RewritePlan planRequestRewrite(String url) {
+        return rewriteController.getCompiledRules().planRequest(url);
+    }
+
+    public RewritePlan planResponseRewrite(RewriteRuleSet rules, int originalStatusCode, String url) {
+        return rules.planResponse(originalStatusCode, url);
+    }
+
+    public void recordRuleEvaluation(long nanos) {
+        rewriteController.recordEvaluation(nanos);
     }
 
     public RewriteController getRewriteController() {
@@ -876,6 +1489,16 @@ public class MainController {
     }
 
     public void shutdown() {
+        if (captureDrain != null) {
+            captureDrain.stop();
+        }
+        if (captureLog != null) {
+            captureLog.close();
+        }
+        captureStoreExecutor.shutdown();
+        rewriteController.shutdown();
+        filterExecutor.shutdownNow();
+        decodeExecutor.shutdownNow();
         executorService.shutdown();
         System.out.println("🛑 MainController shutdown");
     }
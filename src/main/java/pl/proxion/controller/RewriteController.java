@@ -1,19 +1,143 @@
 package pl.proxion.controller;
 
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import pl.proxion.model.EndpointPatternType;
+import pl.proxion.model.RewriteAction;
 import pl.proxion.model.RewriteRule;
+import pl.proxion.model.RewriteTarget;
+import pl.proxion.rewrite.EvaluationHistogram;
+import pl.proxion.rewrite.RewriteRuleFile;
+import pl.proxion.rewrite.RewriteRuleSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class RewriteController {
 
+    private static final DateTimeFormatter LAST_HIT_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
     private ObservableList<RewriteRule> rewriteRules = FXCollections.observableArrayList();
     private TableView<RewriteRule> rewriteTable;
+    private Label statsLabel;
+
+    // Czas oceny reguł na odpowiedź - zapisywany z wątków Netty, odczytywany przy odświeżaniu tabeli
+    private final EvaluationHistogram evaluationHistogram = new EvaluationHistogram();
+
+    // Migawka czytana przez wątki Netty - lista reguł należy do wątku UI i zmienia się tylko tutaj
+    private volatile RewriteRuleSet compiledRules = RewriteRuleSet.EMPTY;
+
+    // Plik z regułami; null, dopóki loadRules nie zostało wywołane
+    private RewriteRuleFile ruleFile;
+    // Lista jest właśnie podmieniana regułami z pliku - migawka już skompilowana, plik już zapisany
+    private boolean applyingFileRules;
+    // Licznik zmian reguł z UI (zapisuje tylko wątek UI) - wczytanie pliku sprzed zmiany jej nie nadpisze
+    private volatile long ruleEdits;
+
+    public RewriteController() {
+        rewriteRules.addListener((ListChangeListener<RewriteRule>) change -> {
+            if (!applyingFileRules) {
+                recompileRules();
+                saveRules();
+            }
+        });
+    }
+
+    /**
+     * Wczytuje reguły z pliku JSON (w tle) i - jeśli {@code watch} - wczytuje je ponownie po każdej zmianie
+     * pliku. Gdy pliku jeszcze nie ma, zaczynamy od przykładowych reguł i zapisujemy je.
+     */
+    public void loadRules(Path file, boolean watch) {
+        ruleFile = new RewriteRuleFile(file, this::applyLoadedRules);
+        boolean exists = ruleFile.exists();
+        try {
+            ruleFile.start(watch);
+        } catch (IOException e) {
+            System.err.println("❌ Cannot watch rewrite rules file " + file + ": " + e.getMessage());
+        }
+        if (!exists) {
+            addExampleRules();
+        }
+    }
+
+    /**
+     * Wołane z wątku obserwatora pliku. Walidacja i kompilacja 10k reguł odbywa się tutaj, a wątek UI
+     * tylko podmienia listę w tabeli i publikuje gotową migawkę jednym zapisem pola volatile -
+     * odpowiedzi w toku kończą na starej migawce.
+     */
+    private void applyLoadedRules(List<RewriteRule> loaded) {
+        long editsBefore = ruleEdits;
+        List<RewriteRule> valid = new ArrayList<>(loaded.size());
+        for (RewriteRule rule : loaded) {
+            String error = validateRule(rule);
+            if (error != null) {
+                System.err.println("❌ Skipping rewrite rule from file (" + rule.getDescription() + "): "
+                        + error.replace('\n', ' '));
+                continue;
+            }
+            valid.add(rule);
+        }
+        RewriteRuleSet snapshot = RewriteRuleSet.compile(valid);
+
+        Platform.runLater(() -> {
+            if (ruleEdits != editsBefore) {
+                // Zmiana z UI wcisnęła się w trakcie wczytywania - tabela zostaje bez zmian, a pliku
+                // nie nadpisujemy, żeby nie zgubić zmian wprowadzonych z zewnątrz
+                System.err.println("⚠️ Rewrite rules edited while reloading " + ruleFile.getPath()
+                        + " - keeping rules from the UI, file left unchanged");
+                return;
+            }
+            applyingFileRules = true;
+            try {
+                rewriteRules.setAll(valid);
+            } finally {
+                applyingFileRules = false;
+            }
+            compiledRules = snapshot;
+        });
+    }
+
+    private void saveRules() {
+        if (ruleFile != null) {
+            ruleFile.save(rewriteRules);
+        }
+    }
+
+    public void shutdown() {
+        if (ruleFile != null) {
+            ruleFile.close();
+        }
+    }
+
+    /**
+     * Kompiluje reguły do nowej migawki i publikuje ją jednym zapisem. Wołane z wątku UI po każdej zmianie.
+     */
+    public void recompileRules() {
+        ruleEdits++;
+        compiledRules = RewriteRuleSet.compile(rewriteRules);
+    }
 
     public void initializeRewriteTab(VBox rewriteTabContent) {
         // Tworzenie tabeli z regułami rewrite
@@ -34,6 +158,18 @@ public class RewriteController {
         endpointCol.setCellValueFactory(new PropertyValueFactory<>("endpointPattern"));
         endpointCol.setPrefWidth(150);
 
+        TableColumn<RewriteRule, EndpointPatternType> typeCol = new TableColumn<>("Type");
+        typeCol.setCellValueFactory(new PropertyValueFactory<>("patternType"));
+        typeCol.setPrefWidth(80);
+
+        TableColumn<RewriteRule, RewriteAction> actionCol = new TableColumn<>("Action");
+        actionCol.setCellValueFactory(new PropertyValueFactory<>("action"));
+        actionCol.setPrefWidth(110);
+
+        TableColumn<RewriteRule, String> changeCol = new TableColumn<>("Change");
+        changeCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(describeChange(cell.getValue())));
+        changeCol.setPrefWidth(200);
+
         TableColumn<RewriteRule, Boolean> enabledCol = new TableColumn<>("Enabled");
         enabledCol.setCellValueFactory(new PropertyValueFactory<>("enabled"));
         enabledCol.setPrefWidth(80);
@@ -44,7 +180,10 @@ public class RewriteController {
         descCol.setCellValueFactory(new PropertyValueFactory<>("description"));
         descCol.setPrefWidth(200);
 
-        rewriteTable.getColumns().addAll(originalCol, newCol, endpointCol, enabledCol, descCol);
+        rewriteTable.getColumns().addAll(actionCol, originalCol, newCol, changeCol, endpointCol, typeCol, enabledCol,
+                descCol);
+        rewriteTable.getColumns().addAll(createStatsColumns());
+        statsLabel = new Label();
 
         // Przyciski zarządzania
         Button addButton = new Button("Add Rule");
@@ -63,14 +202,77 @@ public class RewriteController {
         buttonBox.setSpacing(10);
         buttonBox.setPadding(new javafx.geometry.Insets(10, 0, 10, 0));
 
-        // Dodaj przykładowe reguły
-        addExampleRules();
-
         // Ustawienie rozmiaru tabeli
         rewriteTable.setPrefHeight(400);
 
         // Dodaj elementy do kontenera
-        rewriteTabContent.getChildren().addAll(rewriteTable, buttonBox);
+        rewriteTabContent.getChildren().addAll(rewriteTable, statsLabel, buttonBox);
+    }
+
+    /**
+     * Kolumny z licznikami reguł. Wartości są czytane przy każdym {@link #refreshStats()},
+     * a nie wiązane z właściwościami - liczniki zmieniają się poza wątkiem UI.
+     */
+    public List<TableColumn<RewriteRule, ?>> createStatsColumns() {
+        TableColumn<RewriteRule, Long> hitsCol = new TableColumn<>("Hits");
+        hitsCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().stats().getHits()));
+        hitsCol.setPrefWidth(70);
+
+        TableColumn<RewriteRule, Long> missesCol = new TableColumn<>("Misses");
+        missesCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().stats().getMisses()));
+        missesCol.setPrefWidth(70);
+
+        TableColumn<RewriteRule, String> lastHitCol = new TableColumn<>("Last Hit");
+        lastHitCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(
+                formatLastHit(cell.getValue().stats().getLastHitMillis())));
+        lastHitCol.setPrefWidth(80);
+
+        return List.of(hitsCol, missesCol, lastHitCol);
+    }
+
+    private static String formatLastHit(long millis) {
+        if (millis == 0) {
+            return "never";
+        }
+        return LAST_HIT_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Odświeża kolumny liczników i podsumowanie czasu oceny. Wołane okresowo z wątku UI.
+     */
+    public void refreshStats() {
+        if (rewriteTable != null && isOnScreen(rewriteTable)) {
+            rewriteTable.refresh();
+        }
+        if (statsLabel != null && isOnScreen(statsLabel)) {
+            statsLabel.setText(evaluationHistogram.summary());
+        }
+    }
+
+    // isVisible() węzła zostaje true, gdy zakładka jest schowana - TabPane ukrywa tylko jej zawartość,
+    // więc sprawdzamy widoczność całej ścieżki do sceny i to, czy okno jest pokazane
+    private static boolean isOnScreen(Node node) {
+        Scene scene = node.getScene();
+        if (scene == null || scene.getWindow() == null || !scene.getWindow().isShowing()) {
+            return false;
+        }
+        if (scene.getWindow() instanceof Stage && ((Stage) scene.getWindow()).isIconified()) {
+            return false;
+        }
+        for (Node current = node; current != null; current = current.getParent()) {
+            if (!current.isVisible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void recordEvaluation(long nanos) {
+        evaluationHistogram.record(nanos);
+    }
+
+    public EvaluationHistogram getEvaluationHistogram() {
+        return evaluationHistogram;
     }
 
     private void addExampleRules() {
@@ -81,70 +283,186 @@ public class RewriteController {
     }
 
     public void showAddRewriteRuleDialog() {
+        showAddRewriteRuleDialog(new RewriteRule());
+    }
+
+    /**
+     * Dialog nowej reguły wypełniony wartościami z szablonu (np. z "Modify Response" dla wybranej transakcji).
+     */
+    public void showAddRewriteRuleDialog(RewriteRule template) {
+        showRuleDialog("Add Rewrite Rule", "Create new rewrite rule", "Add", template).ifPresent(rule -> {
+            if (checkRule(rule)) {
+                rewriteRules.add(rule);
+            }
+        });
+    }
+
+    private Optional<RewriteRule> showRuleDialog(String title, String header, String buttonText, RewriteRule rule) {
         Dialog<RewriteRule> dialog = new Dialog<>();
-        dialog.setTitle("Add Rewrite Rule");
-        dialog.setHeaderText("Create new status code rewrite rule");
+        dialog.setTitle(title);
+        dialog.setHeaderText(header);
 
-        // Pola formularza
-        TextField originalField = new TextField();
-        originalField.setPromptText("e.g., 404 or 4xx");
+        // Pola formularza wypełnione danymi
+        ChoiceBox<RewriteAction> actionChoice = new ChoiceBox<>();
+        actionChoice.getItems().addAll(RewriteAction.values());
+        actionChoice.setValue(rule.getAction());
 
-        TextField newField = new TextField();
+        ChoiceBox<RewriteTarget> targetChoice = new ChoiceBox<>();
+        targetChoice.getItems().addAll(RewriteTarget.values());
+        targetChoice.setValue(rule.getTarget());
+
+        TextField originalField = new TextField(rule.getOriginalStatusCode());
+        originalField.setPromptText("e.g., 404 or 4xx (header/body rules: empty = any status)");
+
+        TextField newField = new TextField(rule.getNewStatusCode());
         newField.setPromptText("e.g., 200");
 
-        TextField endpointField = new TextField();
-        endpointField.setPromptText("e.g., /api/users (leave empty for all endpoints)");
+        TextField headerField = new TextField(rule.getHeaderName());
+        headerField.setPromptText("e.g., Cache-Control");
+
+        TextField matchField = new TextField(rule.getMatchText());
+        matchField.setPromptText("Text to replace (header: empty = whole value)");
+
+        TextField replacementField = new TextField(rule.getReplacement());
+        replacementField.setPromptText("Replacement or header value ($1 with regex)");
+
+        CheckBox regexCheck = new CheckBox("Regex");
+        regexCheck.setSelected(rule.isRegex());
+
+        TextField endpointField = new TextField(rule.getEndpointPattern());
+        endpointField.setPromptText("e.g., /api/users, /api/*/users/** or ^/orders/\\d+$ (empty = all)");
+
+        ChoiceBox<EndpointPatternType> typeChoice = new ChoiceBox<>();
+        typeChoice.getItems().addAll(EndpointPatternType.values());
+        typeChoice.setValue(rule.getPatternType());
+
+        TextField hostField = new TextField(rule.getHostPattern());
+        hostField.setPromptText("e.g., api.example.com or *.example.com (leave empty for all hosts)");
 
         CheckBox enabledCheck = new CheckBox("Enabled");
-        enabledCheck.setSelected(true);
+        enabledCheck.setSelected(rule.isEnabled());
 
-        TextArea descArea = new TextArea();
+        TextArea descArea = new TextArea(rule.getDescription());
         descArea.setPromptText("Rule description");
         descArea.setPrefRowCount(3);
 
+        // Pola nieużywane przez wybraną akcję są wyszarzone
+        Runnable updateFields = () -> {
+            RewriteAction action = actionChoice.getValue();
+            boolean status = action == RewriteAction.STATUS;
+            boolean headerAction = !status && action != RewriteAction.REPLACE_BODY;
+            boolean matching = action == RewriteAction.REPLACE_HEADER || action == RewriteAction.REPLACE_BODY;
+            targetChoice.setDisable(status);
+            originalField.setDisable(!status && targetChoice.getValue() == RewriteTarget.REQUEST);
+            newField.setDisable(!status);
+            headerField.setDisable(!headerAction);
+            matchField.setDisable(!matching);
+            regexCheck.setDisable(!matching);
+            replacementField.setDisable(status || action == RewriteAction.REMOVE_HEADER);
+        };
+        actionChoice.valueProperty().addListener((observable, oldValue, newValue) -> updateFields.run());
+        targetChoice.valueProperty().addListener((observable, oldValue, newValue) -> updateFields.run());
+        updateFields.run();
+
         GridPane grid = new GridPane();
         grid.setHgap(10);
         grid.setVgap(10);
-        grid.add(new Label("Original Status:"), 0, 0);
-        grid.add(originalField, 1, 0);
-        grid.add(new Label("New Status:"), 0, 1);
-        grid.add(newField, 1, 1);
-        grid.add(new Label("Endpoint Pattern:"), 0, 2);
-        grid.add(endpointField, 1, 2);
-        grid.add(enabledCheck, 0, 3, 2, 1);
-        grid.add(new Label("Description:"), 0, 4);
-        grid.add(descArea, 0, 5, 2, 1);
+        grid.add(new Label("Action:"), 0, 0);
+        grid.add(actionChoice, 1, 0);
+        grid.add(new Label("Applies To:"), 0, 1);
+        grid.add(targetChoice, 1, 1);
+        grid.add(new Label("Original Status:"), 0, 2);
+        grid.add(originalField, 1, 2);
+        grid.add(new Label("New Status:"), 0, 3);
+        grid.add(newField, 1, 3);
+        grid.add(new Label("Header Name:"), 0, 4);
+        grid.add(headerField, 1, 4);
+        grid.add(new Label("Match Text:"), 0, 5);
+        grid.add(matchField, 1, 5);
+        grid.add(regexCheck, 2, 5);
+        grid.add(new Label("Replacement:"), 0, 6);
+        grid.add(replacementField, 1, 6);
+        grid.add(new Label("Endpoint Pattern:"), 0, 7);
+        grid.add(endpointField, 1, 7);
+        grid.add(new Label("Pattern Type:"), 0, 8);
+        grid.add(typeChoice, 1, 8);
+        grid.add(new Label("Host Pattern:"), 0, 9);
+        grid.add(hostField, 1, 9);
+        grid.add(enabledCheck, 0, 10, 2, 1);
+        grid.add(new Label("Description:"), 0, 11);
+        grid.add(descArea, 0, 12, 3, 1);
 
         dialog.getDialogPane().setContent(grid);
 
         // Przyciski
-        ButtonType addButtonType = new ButtonType("Add", ButtonBar.ButtonData.OK_DONE);
-        dialog.getDialogPane().getButtonTypes().addAll(addButtonType, ButtonType.CANCEL);
+        ButtonType okButtonType = new ButtonType(buttonText, ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(okButtonType, ButtonType.CANCEL);
 
         // Konwersja wyniku
         dialog.setResultConverter(dialogButton -> {
-            if (dialogButton == addButtonType) {
-                return new RewriteRule(
+            if (dialogButton == okButtonType) {
+                RewriteRule result = new RewriteRule(
                         originalField.getText(),
                         newField.getText(),
                         endpointField.getText(),
                         enabledCheck.isSelected(),
-                        descArea.getText()
+                        descArea.getText(),
+                        typeChoice.getValue(),
+                        hostField.getText()
                 );
+                result.setAction(actionChoice.getValue());
+                result.setTarget(targetChoice.getValue());
+                result.setHeaderName(headerField.getText());
+                result.setMatchText(matchField.getText());
+                result.setReplacement(replacementField.getText());
+                result.setRegex(regexCheck.isSelected());
+                return result;
             }
             return null;
         });
 
-        dialog.showAndWait().ifPresent(rule -> {
-            if (isValidRule(rule)) {
-                rewriteRules.add(rule);
-            } else {
-                showAlert("Invalid Rule", "Please enter valid status codes.");
+        return dialog.showAndWait();
+    }
+
+    // Walidacja i kompilacja wzorców przy zapisie - błędna reguła nie trafia na listę
+    private boolean checkRule(RewriteRule rule) {
+        String error = validateRule(rule);
+        if (error != null) {
+            showAlert("Invalid Rule", error);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Zwraca opis błędu albo {@code null}. Kompiluje wzorce reguły. Nie dotyka UI - jest wołane
+     * także z wątku obserwatora pliku reguł.
+     */
+    private String validateRule(RewriteRule rule) {
+        if (!isValidRule(rule)) {
+            return rule.isStatusRule()
+                    ? "Please enter valid status codes."
+                    : "Please enter a valid status filter, header name and text to replace.";
+        }
+        try {
+            rule.compileEndpoint();
+        } catch (PatternSyntaxException e) {
+            return "Endpoint or host pattern is not valid:\n" + e.getMessage();
+        }
+        if (!rule.isStatusRule() && rule.isRegex() && !rule.getMatchText().isEmpty()) {
+            try {
+                Pattern.compile(rule.getMatchText());
+            } catch (PatternSyntaxException e) {
+                return "Match text is not a valid regular expression:\n" + e.getMessage();
             }
-        });
+        }
+        return null;
     }
 
     private boolean isValidRule(RewriteRule rule) {
+        if (!rule.isStatusRule()) {
+            return isValidMessageRule(rule);
+        }
         if (rule.getOriginalStatusCode().isEmpty() || rule.getNewStatusCode().isEmpty()) {
             return false;
         }
@@ -154,6 +472,31 @@ public class RewriteController {
                 isValidStatusCodeFormat(rule.getNewStatusCode());
     }
 
+    private boolean isValidMessageRule(RewriteRule rule) {
+        // Filtr statusu jest opcjonalny i ma sens tylko dla odpowiedzi
+        String filter = rule.getOriginalStatusCode().trim();
+        if (rule.getTarget() == RewriteTarget.RESPONSE && !filter.isEmpty() && !isValidStatusCodeFormat(filter)) {
+            return false;
+        }
+        if (rule.getAction() == RewriteAction.REPLACE_BODY) {
+            return !rule.getMatchText().isEmpty();
+        }
+        return isValidHeaderName(rule.getHeaderName().trim());
+    }
+
+    private static boolean isValidHeaderName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c <= ' ' || c >= 127 || "()<>@,;:\\\"/[]?={}".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean isValidStatusCodeFormat(String statusCode) {
         if (statusCode.endsWith("xx")) {
             String digit = statusCode.substring(0, 1);
@@ -178,64 +521,37 @@ public class RewriteController {
     }
 
     private void showEditRewriteRuleDialog(RewriteRule rule) {
-        Dialog<RewriteRule> dialog = new Dialog<>();
-        dialog.setTitle("Edit Rewrite Rule");
-        dialog.setHeaderText("Edit status code rewrite rule");
-
-        // Pola formularza wypełnione danymi
-        TextField originalField = new TextField(rule.getOriginalStatusCode());
-        TextField newField = new TextField(rule.getNewStatusCode());
-        TextField endpointField = new TextField(rule.getEndpointPattern());
-        CheckBox enabledCheck = new CheckBox("Enabled");
-        enabledCheck.setSelected(rule.isEnabled());
-        TextArea descArea = new TextArea(rule.getDescription());
-        descArea.setPrefRowCount(3);
-
-        GridPane grid = new GridPane();
-        grid.setHgap(10);
-        grid.setVgap(10);
-        grid.add(new Label("Original Status:"), 0, 0);
-        grid.add(originalField, 1, 0);
-        grid.add(new Label("New Status:"), 0, 1);
-        grid.add(newField, 1, 1);
-        grid.add(new Label("Endpoint Pattern:"), 0, 2);
-        grid.add(endpointField, 1, 2);
-        grid.add(enabledCheck, 0, 3, 2, 1);
-        grid.add(new Label("Description:"), 0, 4);
-        grid.add(descArea, 0, 5, 2, 1);
-
-        dialog.getDialogPane().setContent(grid);
-
-        // Przyciski
-        ButtonType saveButtonType = new ButtonType("Save", ButtonBar.ButtonData.OK_DONE);
-        dialog.getDialogPane().getButtonTypes().addAll(saveButtonType, ButtonType.CANCEL);
-
-        // Konwersja wyniku
-        dialog.setResultConverter(dialogButton -> {
-            if (dialogButton == saveButtonType) {
-                return new RewriteRule(
-                        originalField.getText(),
-                        newField.getText(),
-                        endpointField.getText(),
-                        enabledCheck.isSelected(),
-                        descArea.getText()
-                );
-            }
-            return null;
-        });
-
-        dialog.showAndWait().ifPresent(updatedRule -> {
-            if (isValidRule(updatedRule)) {
+        showRuleDialog("Edit Rewrite Rule", "Edit rewrite rule", "Save", rule).ifPresent(updatedRule -> {
+            if (checkRule(updatedRule)) {
                 int index = rewriteRules.indexOf(rule);
                 if (index >= 0) {
                     rewriteRules.set(index, updatedRule);
                 }
-            } else {
-                showAlert("Invalid Rule", "Please enter valid status codes.");
             }
         });
     }
 
+    /**
+     * Krótki opis zmiany wprowadzanej przez regułę - kolumna "Change" w tabeli reguł.
+     */
+    public static String describeChange(RewriteRule rule) {
+        String target = rule.getTarget() == RewriteTarget.REQUEST ? "request " : "response ";
+        switch (rule.getAction()) {
+            case ADD_HEADER:
+                return "+ " + target + rule.getHeaderName() + ": " + rule.getReplacement();
+            case REMOVE_HEADER:
+                return "- " + target + rule.getHeaderName();
+            case REPLACE_HEADER:
+                return target + rule.getHeaderName() + ": "
+                        + (rule.getMatchText().isEmpty() ? "" : rule.getMatchText() + " → ") + rule.getReplacement();
+            case REPLACE_BODY:
+                return target + "body: " + rule.getMatchText() + " → " + rule.getReplacement()
+                        + (rule.isRegex() ? " (regex)" : "");
+            default:
+                return rule.getOriginalStatusCode() + " → " + rule.getNewStatusCode();
+        }
+    }
+
     public void deleteSelectedRule() {
         RewriteRule selected = rewriteTable.getSelectionModel().getSelectedItem();
         if (selected != null) {
@@ -247,11 +563,15 @@ public class RewriteController {
 
     private void enableAllRules() {
         rewriteRules.forEach(rule -> rule.setEnabled(true));
+        recompileRules();
+        saveRules();
         rewriteTable.refresh();
     }
 
     private void disableAllRules() {
         rewriteRules.forEach(rule -> rule.setEnabled(false));
+        recompileRules();
+        saveRules();
         rewriteTable.refresh();
     }
 
@@ -262,20 +582,26 @@ public class RewriteController {
         alert.showAndWait();
     }
 
-    public int applyRewriteRules(int originalStatusCode, String url) {
-        for (RewriteRule rule : rewriteRules) {
-            if (rule.matches(originalStatusCode, url)) {
-                try {
-                    int newCode = Integer.parseInt(rule.getNewStatusCode());
-                    System.out.println("🔄 Rewriting status code: " + originalStatusCode + " → " + newCode +
-                            " for URL: " + url);
-                    return newCode;
-                } catch (NumberFormatException e) {
-                    System.err.println("❌ Invalid new status code in rule: " + rule.getNewStatusCode());
-                }
-            }
-        }
-        return originalStatusCode;
+    /**
+     * Wołane z wątków Netty dla każdej odpowiedzi - czyta tylko bieżącą migawkę, bez blokad.
+     * Trafienia liczy migawka (kolumny "Hits"/"Misses") - bez logowania na ścieżce odpowiedzi.
+     * Migawkę podaje wołający, żeby status i pozostałe reguły jednej odpowiedzi pochodziły z tej samej.
+     */
+    public int applyRewriteRules(RewriteRuleSet rules, int originalStatusCode, String url) {
+        int match = rules.match(originalStatusCode, url);
+        return match == RewriteRuleSet.NO_MATCH ? originalStatusCode : rules.getTargetStatus(match);
+    }
+
+    public RewriteRuleSet getCompiledRules() {
+        return compiledRules;
+    }
+
+    public void setRewriteTable(TableView<RewriteRule> rewriteTable) {
+        this.rewriteTable = rewriteTable;
+    }
+
+    public void setStatsLabel(Label statsLabel) {
+        this.statsLabel = statsLabel;
     }
 
     public ObservableList<RewriteRule> getRewriteRules() {
@@ -0,0 +1,125 @@
+package pl.proxion.model;
+
+import java.util.regex.Pattern;
+
+/**
+ * Skompilowany wzorzec endpointu reguły rewrite. Kompilowany raz - przy zapisie reguły w dialogu -
+ * a nie przy każdej odpowiedzi. Błędne wyrażenie zgłasza {@link java.util.regex.PatternSyntaxException}.
+ */
+public final class EndpointPattern {
+
+    private final EndpointPatternType type;
+    private final String hostText;
+    private final String pathText;
+    private final Pattern host;
+    private final Pattern path;
+
+    private EndpointPattern(EndpointPatternType type, String hostText, String pathText, Pattern host, Pattern path) {
+        this.type = type;
+        this.hostText = hostText;
+        this.pathText = pathText;
+        this.host = host;
+        this.path = path;
+    }
+
+    public static EndpointPattern compile(EndpointPatternType type, String hostPattern, String pathPattern) {
+        EndpointPatternType checkedType = type != null ? type : EndpointPatternType.CONTAINS;
+        String hostText = hostPattern != null ? hostPattern.trim() : "";
+        String pathText = pathPattern != null ? pathPattern : "";
+        switch (checkedType) {
+            case GLOB:
+                return new EndpointPattern(checkedType, hostText, pathText,
+                        hostText.isEmpty() ? null : Pattern.compile(globToRegex(hostText, '.'), Pattern.CASE_INSENSITIVE),
+                        pathText.isEmpty() ? null : Pattern.compile(globToRegex(pathText, '/')));
+            case REGEX:
+                return new EndpointPattern(checkedType, hostText, pathText,
+                        hostText.isEmpty() ? null : Pattern.compile(hostText, Pattern.CASE_INSENSITIVE),
+                        pathText.isEmpty() ? null : Pattern.compile(pathText));
+            default:
+                return new EndpointPattern(checkedType, hostText, pathText, null, null);
+        }
+    }
+
+    /**
+     * Glob: {@code **} - dowolny ciąg, {@code *} - ciąg bez separatora, {@code ?} - jeden znak bez separatora.
+     * Końcowe {@code /**} pasuje też do samego katalogu ("/api/**" obejmuje "/api").
+     */
+    static String globToRegex(String glob, char separator) {
+        String quotedSeparator = Pattern.quote(String.valueOf(separator));
+        String suffix = "";
+        String body = glob;
+        if (glob.endsWith(separator + "**")) {
+            // "/api/**" - separator przed ** jest opcjonalny razem z resztą
+            body = glob.substring(0, glob.length() - 3);
+            suffix = "(?:" + quotedSeparator + ".*)?";
+        }
+
+        StringBuilder regex = new StringBuilder(body.length() * 2 + suffix.length());
+        String notSeparator = "[^" + quotedSeparator + "]";
+        int literalStart = 0;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literalStart) {
+                regex.append(Pattern.quote(body.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                regex.append(notSeparator);
+            } else if (body.startsWith("**", i)) {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append(notSeparator).append('*');
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < body.length()) {
+            regex.append(Pattern.quote(body.substring(literalStart)));
+        }
+        return regex.append(suffix).toString();
+    }
+
+    public boolean isMatchAll() {
+        return hostText.isEmpty() && pathText.isEmpty();
+    }
+
+    public boolean isContains() {
+        return type == EndpointPatternType.CONTAINS;
+    }
+
+    public EndpointPatternType getType() {
+        return type;
+    }
+
+    public String getHostText() {
+        return hostText;
+    }
+
+    public String getPathText() {
+        return pathText;
+    }
+
+    public boolean matches(String url) {
+        return matches(url, UrlParts.parse(url));
+    }
+
+    public boolean matches(String url, UrlParts parts) {
+        if (type == EndpointPatternType.CONTAINS) {
+            return (hostText.isEmpty() || containsIgnoreCase(parts.getHost(), hostText))
+                    && (pathText.isEmpty() || (url != null && url.contains(pathText)));
+        }
+        return (host == null || host.matcher(parts.getHost()).matches())
+                && (path == null || path.matcher(parts.getPath()).matches());
+    }
+
+    private static boolean containsIgnoreCase(String text, String value) {
+        for (int i = 0; i <= text.length() - value.length(); i++) {
+            if (text.regionMatches(true, i, value, 0, value.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
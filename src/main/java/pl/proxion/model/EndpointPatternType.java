@@ -0,0 +1,13 @@
+package pl.proxion.model;
+
+/**
+ * Rodzaj wzorca endpointu w regule rewrite.
+ */
+public enum EndpointPatternType {
+    // Podciąg URL (dotychczasowe zachowanie) i podciąg hosta
+    CONTAINS,
+    // Glob na ścieżce ("/api/*/users/**") i hoście ("*.example.com")
+    GLOB,
+    // Wyrażenie regularne dopasowane do całej ścieżki i całego hosta
+    REGEX
+}
@@ -0,0 +1,81 @@
+package pl.proxion.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Nagłówki HTTP zapisane jako jedna tablica bajtów ISO-8859-1 w postaci "nazwa: wartość\n".
+ * Tyle samo miejsca co tekst nagłówków, bez obiektów na każdą parę.
+ */
+public final class HeaderBytes {
+
+    private HeaderBytes() {
+    }
+
+    public static byte[] of(Iterable<Map.Entry<String, String>> headers) {
+        int length = 0;
+        for (Map.Entry<String, String> header : headers) {
+            length += header.getKey().length() + 2 + header.getValue().length() + 1;
+        }
+        byte[] data = new byte[length];
+        int position = 0;
+        for (Map.Entry<String, String> header : headers) {
+            position = put(data, position, header.getKey());
+            data[position++] = ':';
+            data[position++] = ' ';
+            position = put(data, position, header.getValue());
+            data[position++] = '\n';
+        }
+        return data;
+    }
+
+    private static int put(byte[] data, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            data[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    /**
+     * Wartość pierwszego nagłówka o danej nazwie (bez rozróżniania wielkości liter) albo null.
+     */
+    public static String get(byte[] data, String name) {
+        if (data == null) {
+            return null;
+        }
+        int lineStart = 0;
+        while (lineStart < data.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < data.length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int nameEnd = lineStart + name.length();
+            if (nameEnd + 1 < lineEnd && data[nameEnd] == ':' && regionEqualsIgnoreCase(data, lineStart, name)) {
+                int valueStart = nameEnd + 1;
+                while (valueStart < lineEnd && data[valueStart] == ' ') {
+                    valueStart++;
+                }
+                return new String(data, valueStart, lineEnd - valueStart, StandardCharsets.ISO_8859_1);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return null;
+    }
+
+    private static boolean regionEqualsIgnoreCase(byte[] data, int offset, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.toLowerCase((char) (data[offset + i] & 0xFF)) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static String toText(byte[] data) {
+        return data != null ? new String(data, StandardCharsets.ISO_8859_1) : null;
+    }
+
+    public static byte[] fromText(String text) {
+        return text != null ? text.getBytes(StandardCharsets.ISO_8859_1) : null;
+    }
+}
@@ -1,33 +1,142 @@
 package pl.proxion.model;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString(onlyExplicitlyIncluded = true)
 public class HttpTransaction {
-    private String id;
-    private LocalDateTime timestamp;
-    private String method;
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    @EqualsAndHashCode.Include
+    @ToString.Include
+    private final long id; // rosnący licznik zamiast UUID (bez SecureRandom na wątkach Netty)
+    private long timestampNanos; // epoka w nanosekundach
+    @ToString.Include
+    private String method; // internowana
+    private String host; // internowany
+    @ToString.Include
     private String url;
-    private String requestHeaders;
-    private String requestBody;
-    private String responseHeaders;
-    private String responseBody;
+    // Nagłówki jako bajty ISO-8859-1 w postaci "nazwa: wartość\n", body jako surowe bajty
+    private byte[] requestHeaderBytes;
+    private byte[] requestBodyBytes;
+    private byte[] responseHeaderBytes;
+    private byte[] responseBodyBytes;
+    // Pełna długość i CRC32C całego body - zapisane bajty mogą być tylko początkiem
+    private long requestBodyLength;
+    private long responseBodyLength;
+    private int requestBodyHash;
+    private int responseBodyHash;
+    @ToString.Include
     private int statusCode;
     private int originalStatusCode; // Nowe pole - oryginalny status code
     private boolean modified;
     private boolean intercepted;
     private String modifiedResponse;
     private boolean isEncrypted;
+    // Zakończenie mogą zgłosić event loop klienta i serwera naraz - markCompleted() wybiera dokładnie jedno
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private String incompleteCause; // przyczyna urwania odpowiedzi; null, gdy body jest kompletne
+    private boolean listed; // wiersz jest już w tabeli (ustawia wątek UI)
+    private boolean filtered; // wiersz jest w przefiltrowanej liście tabeli (wątek UI)
+    private boolean sampledOut; // pominięta przy próbkowaniu zdarzeń
+    // Wątek zapisu sprawdza evicted, a wątek UI je ustawia - stąd volatile
+    private volatile boolean evicted; // usunięta z magazynu ruchu
+    private volatile boolean stored; // wątek zapisu skończył przenosić nagłówki i body (dziennik / BodyStore)
+    private boolean storageReleased; // miejsce w dzienniku / BodyStore zostało zwolnione (wątek UI)
+    private long retainedBodyBytes;
+    private volatile long logPosition; // pozycja nagłówków i body w CaptureLog, -1 gdy są na stercie
+    // loggedBytes zapisujemy przed logPosition - odczyt logPosition >= 0 gwarantuje jego widoczność
+    private long loggedBytes; // rozmiar nagłówków i body przeniesionych do CaptureLog
+    private int[] searchTrigrams; // trigramy czekające na dopisanie do indeksu wyszukiwania
+    private int searchDoc; // numer dokumentu w TrigramIndex, -1 przed zaindeksowaniem
+    private long bytesSent;
+    private long bytesReceived;
+    private long durationMillis;
 
     public HttpTransaction() {
-        this.id = UUID.randomUUID().toString();
-        this.timestamp = LocalDateTime.now();
-        this.modified = false;
-        this.intercepted = false;
-        this.statusCode = 0;
-        this.originalStatusCode = 0;
-        this.isEncrypted = false;
-    }
-}
\ No newline at end of file
+        this.id = NEXT_ID.incrementAndGet();
+        this.timestampNanos = currentEpochNanos();
+        this.logPosition = -1;
+        this.searchDoc = -1;
+    }
+
+    public static long currentEpochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Oznacza transakcję jako zakończoną. Zwraca true tylko dla pierwszego wywołania - tylko ten wątek
+     * uzupełnia wynik i zgłasza completed/failed, więc każda wymiana jest zapisana dokładnie raz.
+     */
+    public boolean markCompleted() {
+        return completed.compareAndSet(false, true);
+    }
+
+    public void setMethod(String method) {
+        this.method = StringInterner.intern(method);
+    }
+
+    public void setHost(String host) {
+        this.host = StringInterner.intern(host);
+    }
+
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(0, timestampNanos), ZoneId.systemDefault());
+    }
+
+    // Tekstowe akcesory dla UI - dekodowanie dopiero przy wyświetlaniu
+
+    public String getRequestHeaders() {
+        return HeaderBytes.toText(requestHeaderBytes);
+    }
+
+    public void setRequestHeaders(String headers) {
+        this.requestHeaderBytes = HeaderBytes.fromText(headers);
+    }
+
+    public String getResponseHeaders() {
+        return HeaderBytes.toText(responseHeaderBytes);
+    }
+
+    public void setResponseHeaders(String headers) {
+        this.responseHeaderBytes = HeaderBytes.fromText(headers);
+    }
+
+    public String getRequestBody() {
+        return requestBodyBytes != null ? new String(requestBodyBytes, StandardCharsets.UTF_8) : null;
+    }
+
+    public void setRequestBody(String body) {
+        this.requestBodyBytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+        this.requestBodyLength = requestBodyBytes != null ? requestBodyBytes.length : 0;
+    }
+
+    public String getResponseBody() {
+        return responseBodyBytes != null ? new String(responseBodyBytes, StandardCharsets.UTF_8) : null;
+    }
+
+    public void setResponseBody(String body) {
+        this.responseBodyBytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+        this.responseBodyLength = responseBodyBytes != null ? responseBodyBytes.length : 0;
+    }
+}
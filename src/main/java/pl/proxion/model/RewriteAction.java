@@ -0,0 +1,17 @@
+package pl.proxion.model;
+
+/**
+ * Co robi reguła rewrite.
+ */
+public enum RewriteAction {
+    // Zmiana kodu statusu odpowiedzi (dotychczasowe reguły)
+    STATUS,
+    // Dodanie nagłówka o podanej wartości
+    ADD_HEADER,
+    // Usunięcie nagłówka
+    REMOVE_HEADER,
+    // Zamiana wartości istniejącego nagłówka (całej albo dopasowanego fragmentu)
+    REPLACE_HEADER,
+    // Podmiana tekstu w body - strumieniowo, kawałek po kawałku
+    REPLACE_BODY
+}
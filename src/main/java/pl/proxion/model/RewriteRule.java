@@ -1,6 +1,12 @@
 package pl.proxion.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 @Data
 public class RewriteRule {
@@ -9,21 +15,89 @@ public class RewriteRule {
     private String endpointPattern; // Nowe pole dla wzorca endpointu
     private boolean enabled;
     private String description;
+    private EndpointPatternType patternType = EndpointPatternType.CONTAINS;
+    private String hostPattern = ""; // Opcjonalny wzorzec hosta, tego samego rodzaju co endpoint
+    private RewriteAction action = RewriteAction.STATUS;
+    private RewriteTarget target = RewriteTarget.RESPONSE;
+    private String headerName = "";
+    // Szukany tekst (nagłówek lub body) i jego zamiennik; dla ADD_HEADER/REPLACE_HEADER zamiennik to wartość
+    private String matchText = "";
+    private String replacement = "";
+    private boolean regex; // matchText jako wyrażenie regularne (zamiennik może używać $1)
+
+    // Wzorzec kompilowany przy zapisie reguły, unieważniany przy zmianie pól wzorca
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient EndpointPattern compiledEndpoint;
+
+    // Liczniki trafień - żyją razem z obiektem reguły, więc przetrwają rekompilację migawki
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final transient RuleStats stats = new RuleStats();
 
     public RewriteRule() {
         this("", "", "", true, "");
     }
 
     public RewriteRule(String originalStatusCode, String newStatusCode, String endpointPattern, boolean enabled, String description) {
+        this(originalStatusCode, newStatusCode, endpointPattern, enabled, description, EndpointPatternType.CONTAINS, "");
+    }
+
+    public RewriteRule(String originalStatusCode, String newStatusCode, String endpointPattern, boolean enabled,
+                       String description, EndpointPatternType patternType, String hostPattern) {
         this.originalStatusCode = originalStatusCode;
         this.newStatusCode = newStatusCode;
         this.endpointPattern = endpointPattern;
         this.enabled = enabled;
         this.description = description;
+        this.patternType = patternType != null ? patternType : EndpointPatternType.CONTAINS;
+        this.hostPattern = hostPattern != null ? hostPattern : "";
+    }
+
+    public void setEndpointPattern(String endpointPattern) {
+        this.endpointPattern = endpointPattern;
+        this.compiledEndpoint = null;
+    }
+
+    public void setPatternType(EndpointPatternType patternType) {
+        this.patternType = patternType != null ? patternType : EndpointPatternType.CONTAINS;
+        this.compiledEndpoint = null;
+    }
+
+    public void setHostPattern(String hostPattern) {
+        this.hostPattern = hostPattern != null ? hostPattern : "";
+        this.compiledEndpoint = null;
+    }
+
+    /**
+     * Kompiluje wzorzec endpointu. Wołane przy zapisie reguły - błędny regex zgłasza
+     * {@link java.util.regex.PatternSyntaxException}, zanim reguła trafi na listę.
+     */
+    public EndpointPattern compileEndpoint() {
+        compiledEndpoint = EndpointPattern.compile(patternType, hostPattern, endpointPattern);
+        return compiledEndpoint;
+    }
+
+    public EndpointPattern compiledEndpoint() {
+        EndpointPattern compiled = compiledEndpoint;
+        return compiled != null ? compiled : compileEndpoint();
+    }
+
+    public RuleStats stats() {
+        return stats;
+    }
+
+    @JsonIgnore
+    public boolean isStatusRule() {
+        return action == null || action == RewriteAction.STATUS;
     }
 
     public boolean matches(int statusCode, String url) {
-        if (!enabled) return false;
+        if (!enabled || !isStatusRule()) return false;
 
         // Sprawdź czy status code pasuje
         boolean statusMatches = false;
@@ -36,9 +110,6 @@ public class RewriteRule {
         }
 
         // Sprawdź czy endpoint pasuje (jeśli podany)
-        boolean endpointMatches = endpointPattern == null || endpointPattern.isEmpty() ||
-                url.contains(endpointPattern);
-
-        return statusMatches && endpointMatches;
+        return statusMatches && compiledEndpoint().matches(url);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+package pl.proxion.model;
+
+/**
+ * Której wiadomości dotyczy reguła nagłówka lub body.
+ */
+public enum RewriteTarget {
+    REQUEST,
+    RESPONSE
+}
@@ -0,0 +1,38 @@
+package pl.proxion.model;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Liczniki jednej reguły rewrite, zwiększane z wielu wątków Netty naraz. LongAdder rozkłada zapisy
+ * na komórki per wątek, więc reguła sprawdzana przy każdej odpowiedzi nie staje się wspólną linią cache.
+ */
+public final class RuleStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAccumulator lastHitMillis = new LongAccumulator(Long::max, 0);
+
+    public void hit() {
+        hits.increment();
+        lastHitMillis.accumulate(System.currentTimeMillis());
+    }
+
+    // Reguła była kandydatem (pasował status), ale nie pasował endpoint
+    public void miss() {
+        misses.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // 0 = reguła jeszcze nie zadziałała
+    public long getLastHitMillis() {
+        return lastHitMillis.get();
+    }
+}
@@ -0,0 +1,31 @@
+package pl.proxion.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Współdzielone instancje powtarzających się krótkich łańcuchów (metody HTTP, hosty).
+ * Po przekroczeniu limitu nowe wartości nie są już zapamiętywane.
+ */
+public final class StringInterner {
+
+    private static final int MAX_ENTRIES = 65536;
+    private static final ConcurrentHashMap<String, String> VALUES = new ConcurrentHashMap<>();
+
+    private StringInterner() {
+    }
+
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = VALUES.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (VALUES.size() >= MAX_ENTRIES) {
+            return value;
+        }
+        existing = VALUES.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+}
@@ -0,0 +1,67 @@
+package pl.proxion.model;
+
+/**
+ * Host i ścieżka URL (bez portu i query) - wyznaczane raz na transakcję, a nie raz na regułę.
+ */
+public final class UrlParts {
+
+    private final String host;
+    private final String path;
+
+    private UrlParts(String host, String path) {
+        this.host = host;
+        this.path = path;
+    }
+
+    public static UrlParts parse(String url) {
+        if (url == null) {
+            return new UrlParts("", "");
+        }
+        int hostStart = hostStart(url);
+        int hostEnd = hostEnd(url, hostStart);
+        int pathStart = url.indexOf('/', hostEnd);
+        int query = url.indexOf('?', hostEnd);
+        if (pathStart < 0 || (query >= 0 && query < pathStart)) {
+            return new UrlParts(url.substring(hostStart, hostEnd), "/");
+        }
+        int pathEnd = url.indexOf('?', pathStart);
+        int fragment = url.indexOf('#', pathStart);
+        if (pathEnd < 0 || (fragment >= 0 && fragment < pathEnd)) {
+            pathEnd = fragment;
+        }
+        return new UrlParts(url.substring(hostStart, hostEnd),
+                url.substring(pathStart, pathEnd < 0 ? url.length() : pathEnd));
+    }
+
+    /**
+     * Początek hosta w URL; 0 oznacza URL bez schematu (np. "/path" albo "host:443" z CONNECT).
+     */
+    public static int hostStart(String url) {
+        if (url.startsWith("/")) {
+            return 0;
+        }
+        int scheme = url.indexOf("://");
+        return scheme < 0 ? 0 : scheme + 3;
+    }
+
+    public static int hostEnd(String url, int hostStart) {
+        if (url.startsWith("/")) {
+            return 0;
+        }
+        for (int i = hostStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == ':' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPath() {
+        return path;
+    }
+}
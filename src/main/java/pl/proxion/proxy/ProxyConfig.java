@@ -0,0 +1,153 @@
+package pl.proxion.proxy;
+
+import io.netty.channel.WriteBufferWaterMark;
+import lombok.Data;
+
+/**
+ * Ustawienia serwera proxy. Wartości domyślne można nadpisać
+ * właściwościami systemowymi z prefiksem {@code proxion.}.
+ */
+@Data
+public class ProxyConfig {
+    // Transport: "auto" (epoll jeśli dostępny), "epoll" lub "nio"
+    private String transport = "auto";
+    private int workerThreads = 0;
+    private int listenerCount = 1;
+    private int tcpFastOpenQueue = 0;
+    private boolean tcpQuickAck = false;
+    // Tunele CONNECT przez splice() (tylko epoll)
+    private boolean tunnelSplice = true;
+
+    // Pula połączeń do serwerów docelowych
+    private int upstreamMaxPerHost = 8;
+    private long upstreamIdleTimeoutMillis = 30_000;
+
+    // Bufor wyjściowy połączeń - powyżej "high" kanał przestaje być zapisywalny i wstrzymujemy odczyt drugiej strony
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+
+    // Ile body żądania buforujemy, zanim połączenie z serwerem będzie gotowe
+    private int pendingRequestBytesLimit = 1048576;
+
+    // Przekazywanie odpowiedzi kawałkami zamiast agregowania całego body
+    private boolean streamingRelay = true;
+    private int aggregateMaxBytes = 10485760; // 10MB limit w trybie agregującym
+    private int captureMaxBodyBytes = 1048576; // ile body zapisujemy do podglądu
+
+    // TLS do serwerów docelowych: "auto", "openssl" lub "jdk"
+    private String tlsProvider = "auto";
+    private long tlsSessionCacheSize = 4096;
+    private long tlsSessionTimeoutSeconds = 300;
+
+    // Przechwytywanie HTTPS (MITM) z lokalnym CA
+    private boolean mitmEnabled = false;
+    private String mitmCaDirectory = System.getProperty("user.home") + "/.proxion";
+    private int mitmCertCacheSize = 1024;
+    private int mitmKeyPairPoolSize = 16;
+    private int mitmGeneratorThreads = 2;
+
+    // Kolejka zdarzeń przechwytywania między wątkami Netty a UI
+    private int captureRingCapacity = 65536;
+    // "drop-oldest", "sample" lub "block"
+    private String captureOverflowPolicy = "drop-oldest";
+    private int captureSampleRate = 10;
+    private long captureDrainIntervalMillis = 16;
+
+    // Limity magazynu ruchu w UI - najstarsze wpisy są usuwane po przekroczeniu
+    private int trafficMaxRows = 100_000;
+    private long trafficMaxBodyBytes = 256L * 1024 * 1024;
+
+    // Nagłówki i body zakończonych transakcji trafiają do dziennika na dysku zamiast na stertę
+    private boolean captureLogEnabled = true;
+    private String captureLogDirectory = System.getProperty("java.io.tmpdir") + "/proxion-capture";
+    private int captureLogSegmentBytes = 64 * 1024 * 1024;
+
+    // Duże body są kompresowane w tle; "none" wyłącza kompresję, można też podać nazwę klasy BodyCodec
+    private String captureCodec = "deflate";
+    private int captureCompressThreshold = 16 * 1024;
+    private int captureCompressLevel = 1; // Deflater.BEST_SPEED - kompresja nie może nie nadążać za ruchem
+    private int captureStoreQueue = 4096;
+    private long captureDecodedCacheBytes = 32L * 1024 * 1024;
+    // Limit rozpakowanego Content-Encoding przy podglądzie (ochrona przed "bombą" kompresyjną)
+    private int captureDecodeMaxBytes = 16 * 1024 * 1024;
+
+    // Reguły rewrite zapisywane w JSON; zmiany pliku z zewnątrz są wczytywane w locie
+    private String rewriteRulesFile = System.getProperty("user.home") + "/.proxion/rewrite-rules.json";
+    private boolean rewriteWatch = true;
+
+    // Nakładka z czasami filtrowania nad tabelą ruchu
+    private boolean debugOverlay = false;
+
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+    }
+
+    public static ProxyConfig fromSystemProperties() {
+        ProxyConfig config = new ProxyConfig();
+        config.setTransport(System.getProperty("proxion.transport", config.getTransport()));
+        config.setWorkerThreads(Integer.getInteger("proxion.workerThreads", config.getWorkerThreads()));
+        config.setListenerCount(Integer.getInteger("proxion.listeners", config.getListenerCount()));
+        config.setTcpFastOpenQueue(Integer.getInteger("proxion.tcpFastOpen", config.getTcpFastOpenQueue()));
+        config.setTcpQuickAck(Boolean.parseBoolean(System.getProperty("proxion.tcpQuickAck",
+                String.valueOf(config.isTcpQuickAck()))));
+        config.setTunnelSplice(Boolean.parseBoolean(System.getProperty("proxion.tunnelSplice",
+                String.valueOf(config.isTunnelSplice()))));
+        config.setUpstreamMaxPerHost(Integer.getInteger("proxion.upstream.maxPerHost",
+                config.getUpstreamMaxPerHost()));
+        config.setUpstreamIdleTimeoutMillis(Long.getLong("proxion.upstream.idleTimeoutMs",
+                config.getUpstreamIdleTimeoutMillis()));
+        config.setWriteBufferLowWaterMark(Integer.getInteger("proxion.writeBuffer.low",
+                config.getWriteBufferLowWaterMark()));
+        config.setWriteBufferHighWaterMark(Integer.getInteger("proxion.writeBuffer.high",
+                config.getWriteBufferHighWaterMark()));
+        config.setPendingRequestBytesLimit(Integer.getInteger("proxion.pendingRequestBytes",
+                config.getPendingRequestBytesLimit()));
+        config.setStreamingRelay(Boolean.parseBoolean(System.getProperty("proxion.streamingRelay",
+                String.valueOf(config.isStreamingRelay()))));
+        config.setAggregateMaxBytes(Integer.getInteger("proxion.aggregateMaxBytes", config.getAggregateMaxBytes()));
+        config.setCaptureMaxBodyBytes(Integer.getInteger("proxion.captureMaxBodyBytes",
+                config.getCaptureMaxBodyBytes()));
+        config.setTlsProvider(System.getProperty("proxion.tls.provider", config.getTlsProvider()));
+        config.setTlsSessionCacheSize(Long.getLong("proxion.tls.sessionCacheSize",
+                config.getTlsSessionCacheSize()));
+        config.setTlsSessionTimeoutSeconds(Long.getLong("proxion.tls.sessionTimeoutSeconds",
+                config.getTlsSessionTimeoutSeconds()));
+        config.setMitmEnabled(Boolean.parseBoolean(System.getProperty("proxion.mitm",
+                String.valueOf(config.isMitmEnabled()))));
+        config.setMitmCaDirectory(System.getProperty("proxion.mitm.caDir", config.getMitmCaDirectory()));
+        config.setMitmCertCacheSize(Integer.getInteger("proxion.mitm.certCacheSize", config.getMitmCertCacheSize()));
+        config.setMitmKeyPairPoolSize(Integer.getInteger("proxion.mitm.keyPairPool", config.getMitmKeyPairPoolSize()));
+        config.setMitmGeneratorThreads(Integer.getInteger("proxion.mitm.generatorThreads",
+                config.getMitmGeneratorThreads()));
+        config.setCaptureRingCapacity(Integer.getInteger("proxion.capture.ringCapacity",
+                config.getCaptureRingCapacity()));
+        config.setCaptureOverflowPolicy(System.getProperty("proxion.capture.overflow",
+                config.getCaptureOverflowPolicy()));
+        config.setCaptureSampleRate(Integer.getInteger("proxion.capture.sampleRate", config.getCaptureSampleRate()));
+        config.setCaptureDrainIntervalMillis(Long.getLong("proxion.capture.drainIntervalMs",
+                config.getCaptureDrainIntervalMillis()));
+        config.setTrafficMaxRows(Integer.getInteger("proxion.traffic.maxRows", config.getTrafficMaxRows()));
+        config.setTrafficMaxBodyBytes(Long.getLong("proxion.traffic.maxBodyBytes", config.getTrafficMaxBodyBytes()));
+        config.setCaptureLogEnabled(Boolean.parseBoolean(System.getProperty("proxion.capture.log",
+                String.valueOf(config.isCaptureLogEnabled()))));
+        config.setCaptureLogDirectory(System.getProperty("proxion.capture.logDir", config.getCaptureLogDirectory()));
+        config.setCaptureLogSegmentBytes(Integer.getInteger("proxion.capture.segmentBytes",
+                config.getCaptureLogSegmentBytes()));
+        config.setCaptureCodec(System.getProperty("proxion.capture.codec", config.getCaptureCodec()));
+        config.setCaptureCompressThreshold(Integer.getInteger("proxion.capture.compressThreshold",
+                config.getCaptureCompressThreshold()));
+        config.setCaptureCompressLevel(Integer.getInteger("proxion.capture.compressLevel",
+                config.getCaptureCompressLevel()));
+        config.setCaptureStoreQueue(Integer.getInteger("proxion.capture.storeQueue", config.getCaptureStoreQueue()));
+        config.setCaptureDecodedCacheBytes(Long.getLong("proxion.capture.decodedCacheBytes",
+                config.getCaptureDecodedCacheBytes()));
+        config.setCaptureDecodeMaxBytes(Integer.getInteger("proxion.capture.decodeMaxBytes",
+                config.getCaptureDecodeMaxBytes()));
+        config.setRewriteRulesFile(System.getProperty("proxion.rewrite.rulesFile", config.getRewriteRulesFile()));
+        config.setRewriteWatch(Boolean.parseBoolean(System.getProperty("proxion.rewrite.watch",
+                String.valueOf(config.isRewriteWatch()))));
+        config.setDebugOverlay(Boolean.parseBoolean(System.getProperty("proxion.debugOverlay",
+                String.valueOf(config.isDebugOverlay()))));
+        return config;
+    }
+}
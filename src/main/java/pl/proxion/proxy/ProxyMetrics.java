@@ -0,0 +1,86 @@
+package pl.proxion.proxy;
+
+import pl.proxion.capture.CaptureEventRing;
+import pl.proxion.proxy.pool.UpstreamConnectionPools;
+import pl.proxion.proxy.ssl.TlsClientContexts;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Zbiorczy widok metryk serwera proxy (transport, pula połączeń, TLS).
+ */
+public class ProxyMetrics {
+
+    private final TransportType transport;
+    private final int listenerCount;
+    private final UpstreamConnectionPools connectionPools;
+    private final TlsClientContexts tlsContexts;
+    private final CaptureEventRing captureRing;
+    private final LongAccumulator peakOutboundBytes = new LongAccumulator(Long::max, 0);
+
+    public ProxyMetrics(TransportType transport, int listenerCount,
+                        UpstreamConnectionPools connectionPools, TlsClientContexts tlsContexts,
+                        CaptureEventRing captureRing) {
+        this.transport = transport;
+        this.listenerCount = listenerCount;
+        this.connectionPools = connectionPools;
+        this.tlsContexts = tlsContexts;
+        this.captureRing = captureRing;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public int getListenerCount() {
+        return listenerCount;
+    }
+
+    public long getPoolHits() {
+        return connectionPools.getHitCount();
+    }
+
+    public long getPoolMisses() {
+        return connectionPools.getMissCount();
+    }
+
+    public long getTlsHandshakes() {
+        return tlsContexts.getHandshakeCount();
+    }
+
+    public long getTlsResumedHandshakes() {
+        return tlsContexts.getResumedHandshakeCount();
+    }
+
+    public double getTlsAverageHandshakeMillis() {
+        return tlsContexts.getAverageHandshakeMillis();
+    }
+
+    /**
+     * Zapisuje szczytowy bufor wyjściowy zamykanego połączenia klienta.
+     */
+    public void recordOutboundPeak(long bytes) {
+        peakOutboundBytes.accumulate(bytes);
+    }
+
+    public long getPeakOutboundBytes() {
+        return peakOutboundBytes.get();
+    }
+
+    public long getCaptureQueueDepth() {
+        return captureRing != null ? captureRing.depth() : 0;
+    }
+
+    public long getCaptureDroppedEvents() {
+        return captureRing != null ? captureRing.getDroppedCount() : 0;
+    }
+
+    public String summary() {
+        String summary = String.format("transport=%s listeners=%d pool=%d/%d (hits/misses) tls=%d (%d resumed, avg %.1f ms)"
+                        + " peakOutbound=%d B",
+                transport, listenerCount, getPoolHits(), getPoolMisses(),
+                getTlsHandshakes(), getTlsResumedHandshakes(), getTlsAverageHandshakeMillis(),
+                getPeakOutboundBytes());
+        return captureRing != null ? summary + " " + captureRing.summary() : summary;
+    }
+}
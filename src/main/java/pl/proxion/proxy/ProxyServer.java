@@ -4,41 +4,85 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import pl.proxion.controller.MainController;
 import pl.proxion.proxy.handler.ProxyInitializer;
+import pl.proxion.proxy.pool.UpstreamConnectionPools;
+import pl.proxion.proxy.ssl.CertificateAuthority;
+import pl.proxion.proxy.ssl.MitmSslContexts;
+import pl.proxion.proxy.ssl.TlsClientContexts;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ProxyServer {
     private final int port;
-    private Channel serverChannel;
+    private final List<Channel> serverChannels = new ArrayList<>();
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private MainController mainController;
+    private final ProxyConfig config;
+    private final TransportType transport;
+    private final TlsClientContexts tlsContexts;
+    private final UpstreamConnectionPools connectionPools;
+    private final MitmSslContexts mitmContexts;
+    private final ProxyMetrics metrics;
+
+    public ProxyServer(int port, MainController controller) throws Exception {
+        this(port, controller, ProxyConfig.fromSystemProperties());
+    }
 
-    public ProxyServer(int port, MainController controller) {
+    public ProxyServer(int port, MainController controller, ProxyConfig config) throws Exception {
         this.port = port;
         this.mainController = controller;
+        this.config = config;
+        this.transport = TransportType.select(config.getTransport());
+        this.tlsContexts = new TlsClientContexts(config);
+        this.connectionPools = new UpstreamConnectionPools(config, transport, tlsContexts);
+        this.mitmContexts = config.isMitmEnabled() ? createMitmContexts() : null;
+        this.metrics = new ProxyMetrics(transport, getListenerCount(), connectionPools, tlsContexts,
+                mainController != null ? mainController.getCaptureRing() : null);
+    }
+
+    private MitmSslContexts createMitmContexts() throws Exception {
+        CertificateAuthority certificateAuthority = CertificateAuthority.loadOrCreate(Paths.get(config.getMitmCaDirectory()));
+        System.out.println("🕵️ HTTPS interception enabled");
+        return new MitmSslContexts(certificateAuthority, tlsContexts.getProvider(),
+                config.getMitmCertCacheSize(), config.getMitmKeyPairPoolSize(), config.getMitmGeneratorThreads());
+    }
+
+    private int getListenerCount() {
+        // Kilka gniazd nasłuchujących na tym samym porcie wymaga SO_REUSEPORT (tylko epoll)
+        return transport == TransportType.EPOLL ? Math.max(1, config.getListenerCount()) : 1;
     }
 
     public void start() throws Exception {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        int listeners = getListenerCount();
+        bossGroup = transport.newEventLoopGroup(listeners);
+        workerGroup = transport.newEventLoopGroup(config.getWorkerThreads());
 
         try {
-            System.out.println("🚀 Starting server bootstrap...");
+            System.out.println("🚀 Starting server bootstrap (transport: " + transport + ")...");
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .childHandler(new ProxyInitializer(mainController))
-                    .childOption(ChannelOption.AUTO_READ, true);
+                    .channel(transport.serverChannelClass())
+                    .childHandler(new ProxyInitializer(mainController, connectionPools, mitmContexts, metrics))
+                    // Odczyt sterowany ręcznie - czytamy tylko, gdy druga strona nadąża z zapisem
+                    .childOption(ChannelOption.AUTO_READ, false)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, config.getWriteBufferWaterMark());
+            transport.configureServer(b, config);
 
-            System.out.println("📡 Binding to port " + port + "...");
-            serverChannel = b.bind(port).sync().channel();
+            System.out.println("📡 Binding to port " + port + " (" + listeners + " listener(s))...");
+            for (int i = 0; i < listeners; i++) {
+                serverChannels.add(b.bind(port).sync().channel());
+            }
             System.out.println("✅ Proxion proxy started successfully on port " + port);
+            System.out.println("📊 " + metrics.summary());
             System.out.println("🌐 Ready for HTTP traffic");
 
-            serverChannel.closeFuture().sync();
+            for (Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
 
         } catch (Exception e) {
             System.err.println("❌ Error starting proxy server: " + e.getMessage());
@@ -50,13 +94,30 @@ public class ProxyServer {
 
     public void stop() {
         System.out.println("🛑 Stopping proxy server...");
-        if (serverChannel != null) {
+        for (Channel serverChannel : serverChannels) {
             serverChannel.close();
         }
         shutdown();
+        System.out.println("📊 " + metrics.summary());
         System.out.println("✅ Proxy server stopped");
     }
 
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public ProxyMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TlsClientContexts getTlsContexts() {
+        return tlsContexts;
+    }
+
+    public UpstreamConnectionPools getConnectionPools() {
+        return connectionPools;
+    }
+
     private void shutdown() {
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
@@ -65,4 +126,4 @@ public class ProxyServer {
             workerGroup.shutdownGracefully();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package pl.proxion.proxy;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Warstwa transportowa Netty: natywny epoll na Linuksie, NIO wszędzie indziej.
+ */
+public enum TransportType {
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public void configureServer(ServerBootstrap bootstrap, ProxyConfig config) {
+            if (config.getListenerCount() > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            if (config.getTcpFastOpenQueue() > 0) {
+                bootstrap.option(EpollChannelOption.TCP_FASTOPEN, config.getTcpFastOpenQueue());
+            }
+            if (config.isTcpQuickAck()) {
+                bootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+            }
+        }
+
+        @Override
+        public void configureClient(Bootstrap bootstrap, ProxyConfig config) {
+            if (config.getTcpFastOpenQueue() > 0) {
+                bootstrap.option(EpollChannelOption.TCP_FASTOPEN_CONNECT, true);
+            }
+            if (config.isTcpQuickAck()) {
+                bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+            }
+        }
+
+        @Override
+        public void configureTunnel(Bootstrap bootstrap, ProxyConfig config) {
+            configureClient(bootstrap, config);
+            if (config.isTunnelSplice()) {
+                // splice() działa tylko w trybie level-triggered, a tryb da się ustawić tylko przed rejestracją.
+                // Ustawiamy go wyłącznie dla połączeń tunelu - zwykły ruch HTTP zostaje edge-triggered
+                bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED);
+            }
+        }
+    },
+
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> socketChannelClass() {
+            return NioSocketChannel.class;
+        }
+    };
+
+    /**
+     * @param threads liczba wątków, 0 oznacza domyślną liczbę Netty (2 x rdzenie)
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    public abstract Class<? extends Channel> socketChannelClass();
+
+    /**
+     * Opcje specyficzne dla transportu po stronie nasłuchującej. NIO ich nie obsługuje.
+     */
+    public void configureServer(ServerBootstrap bootstrap, ProxyConfig config) {
+    }
+
+    /**
+     * Opcje specyficzne dla transportu dla połączeń do serwerów docelowych.
+     */
+    public void configureClient(Bootstrap bootstrap, ProxyConfig config) {
+    }
+
+    /**
+     * Opcje dla połączenia tunelu CONNECT do serwera docelowego.
+     */
+    public void configureTunnel(Bootstrap bootstrap, ProxyConfig config) {
+        configureClient(bootstrap, config);
+    }
+
+    public static TransportType select(String requested) {
+        if ("nio".equalsIgnoreCase(requested)) {
+            return NIO;
+        }
+        if (Epoll.isAvailable()) {
+            return EPOLL;
+        }
+        if ("epoll".equalsIgnoreCase(requested)) {
+            System.err.println("⚠️ Native epoll transport not available, falling back to NIO: "
+                    + Epoll.unavailabilityCause());
+        }
+        return NIO;
+    }
+}
@@ -0,0 +1,37 @@
+package pl.proxion.proxy.handler;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.AttributeKey;
+
+/**
+ * Szczytowy rozmiar bufora wyjściowego połączenia klienta - pokazuje, ile danych
+ * czekało na wolnego klienta, zanim zadziałało wstrzymanie odczytu.
+ */
+final class OutboundBufferStats {
+
+    private static final AttributeKey<OutboundBufferStats> KEY = AttributeKey.valueOf("proxion.outboundStats");
+
+    private long peakBytes;
+
+    private OutboundBufferStats() {
+    }
+
+    static void record(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        if (buffer == null) {
+            return;
+        }
+        OutboundBufferStats stats = channel.attr(KEY).get();
+        if (stats == null) {
+            stats = new OutboundBufferStats();
+            channel.attr(KEY).set(stats);
+        }
+        stats.peakBytes = Math.max(stats.peakBytes, buffer.totalPendingWriteBytes());
+    }
+
+    static long peak(Channel channel) {
+        OutboundBufferStats stats = channel.attr(KEY).get();
+        return stats != null ? stats.peakBytes : 0;
+    }
+}
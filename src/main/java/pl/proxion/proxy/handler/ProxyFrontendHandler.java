@@ -2,58 +2,91 @@ package pl.proxion.proxy.handler;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.epoll.AbstractEpollStreamChannel;
+import io.netty.channel.epoll.EpollMode;
 import io.netty.handler.codec.http.*;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.SniHandler;
+import pl.proxion.capture.BodyCapture;
 import pl.proxion.controller.MainController;
+import pl.proxion.model.HeaderBytes;
+import pl.proxion.proxy.ProxyMetrics;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.buffer.Unpooled;
 import io.netty.util.CharsetUtil;
 import pl.proxion.model.HttpTransaction;
+import pl.proxion.proxy.pool.UpstreamConnectionPool;
+import pl.proxion.proxy.pool.UpstreamConnectionPools;
+import pl.proxion.proxy.pool.UpstreamKey;
+import pl.proxion.proxy.ssl.MitmSslContexts;
+import pl.proxion.rewrite.RewritePlan;
+import pl.proxion.rewrite.StreamingBodyRewriter;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 
 public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
 
-    private SslContext sslContext;
+    private static final int SPLICE_MIN_CHUNK_BYTES = 1024;
+    private static final int SPLICE_MAX_CHUNK_BYTES = 64 * 1024;
+
     private MainController mainController;
+    private UpstreamConnectionPools connectionPools;
+    private UpstreamConnectionPool connectionPool;
     private Channel backendChannel;
+    // Handler odpowiedzi bieżącego żądania - null, gdy połączenie wróciło już do puli
+    private RealServerHandler backendHandler;
+    // Kawałki body żądania, które przyszły zanim połączenie z serwerem było gotowe
+    private final ArrayDeque<HttpContent> pendingContent = new ArrayDeque<>();
+    private long pendingBytes;
+    private boolean connecting;
     private HttpTransaction currentTransaction;
+    private BodyCapture requestBodyCapture;
+    // Podmiana w body bieżącego żądania (reguły rewrite) - null, gdy żadna reguła body nie pasuje
+    private StreamingBodyRewriter requestBodyRewriter;
     private ChannelHandlerContext clientContext;
-    private boolean isHttpsTunnel = false;
-
-    public ProxyFrontendHandler(MainController controller) {
+    private MitmSslContexts mitmContexts;
+    private ProxyMetrics metrics;
+    // Host docelowy przechwytywanego tunelu (MITM) - żądania mają wtedy względne URI
+    private String mitmHost;
+    private int mitmPort;
+
+    public ProxyFrontendHandler(MainController controller, UpstreamConnectionPools connectionPools,
+                                MitmSslContexts mitmContexts, ProxyMetrics metrics) {
         this.mainController = controller;
-        try {
-            this.sslContext = SslContextBuilder.forClient()
-                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
-                    .build();
-        } catch (Exception e) {
-            System.err.println("❌ Error creating SSL context: " + e.getMessage());
-        }
+        this.connectionPools = connectionPools;
+        this.mitmContexts = mitmContexts;
+        this.metrics = metrics;
     }
 
     private void handleHttpsConnection(ChannelHandlerContext ctx, HttpRequest request) {
         System.out.println("🔐 Handling HTTPS CONNECT: " + request.uri());
 
+        // Rozdzielamy host i port z URI (format: host:port)
+        String[] parts = request.uri().split(":");
+        final String host = parts[0];
+        final int port = parts.length > 1 ? Integer.parseInt(parts[1]) : 443;
+
         // Tworzymy transakcję dla połączenia HTTPS
         HttpTransaction transaction = new HttpTransaction();
         transaction.setMethod("CONNECT");
+        transaction.setHost(host);
         transaction.setUrl(request.uri());
-        transaction.setRequestHeaders(request.headers().toString());
+        transaction.setRequestHeaderBytes(HeaderBytes.of(request.headers()));
         transaction.setStatusCode(200);
         transaction.setResponseHeaders("HTTP/1.1 200 Connection Established");
-        transaction.setResponseBody("HTTPS tunnel established");
+        transaction.setResponseBody(mitmContexts != null ? "HTTPS interception started" : "HTTPS tunnel established");
         transaction.setEncrypted(true);
 
-        // Dodaj do kontrolera
+        // Dodaj do kontrolera - tunel zakończy transakcję przy zamknięciu, MITM od razu
         if (mainController != null) {
-            mainController.addHttpTransaction(transaction);
+            mainController.requestStarted(transaction);
+            if (mitmContexts != null && transaction.markCompleted()) {
+                mainController.completed(transaction);
+            }
         }
 
         // Odpowiadamy 200 OK na CONNECT
@@ -63,41 +96,39 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
         );
         ctx.writeAndFlush(response);
 
-        // Usuwamy handlery HTTP, bo teraz będziemy przekazywać surowe bajty
+        if (mitmContexts != null) {
+            startInterception(ctx, host, port);
+            return;
+        }
+
+        // Tunel przekazuje surowe bajty - nie czytamy od klienta, dopóki nie ma połączenia z serwerem
+        ctx.channel().config().setAutoRead(false);
+
+        // Usuwamy handlery HTTP i logujące, bo teraz będziemy przekazywać surowe bajty
         ChannelPipeline pipeline = ctx.pipeline();
+        if (pipeline.get(LoggingHandler.class) != null) {
+            pipeline.remove(LoggingHandler.class);
+        }
         if (pipeline.get(HttpServerCodec.class) != null) {
             pipeline.remove(HttpServerCodec.class);
         }
-        if (pipeline.get(HttpTrafficHandler.class) != null) {
-            pipeline.remove(HttpTrafficHandler.class);
-        }
         if (pipeline.get(ProxyFrontendHandler.class) != null) {
             pipeline.remove(ProxyFrontendHandler.class);
         }
 
-        // Rozdzielamy host i port z URI (format: host:port)
-        String[] parts = request.uri().split(":");
-        final String host = parts[0];
-        final int port = parts.length > 1 ? Integer.parseInt(parts[1]) : 443;
-
         System.out.println("🔗 Establishing HTTPS tunnel to: " + host + ":" + port);
 
-        // Oznaczamy, że to tunel HTTPS
-        isHttpsTunnel = true;
+        final TunnelSession session = new TunnelSession(transaction, mainController, metrics);
 
-        // Łączymy się z docelowym serwerem
+        // Łączymy się z docelowym serwerem. TLS klienta przechodzi przez tunel bez zmian -
+        // nie szyfrujemy go drugi raz.
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(ctx.channel().eventLoop())
-                .channel(ctx.channel().getClass())
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        // Dodajemy SSL dla połączenia do serwera
-                        ch.pipeline().addLast(sslContext.newHandler(ch.alloc(), host, port));
-                        // Handler do przekazywania danych przez tunel
-                        ch.pipeline().addLast(new TunnelingBackendHandler(ctx.channel()));
-                    }
-                });
+                .channel(connectionPools.getTransport().socketChannelClass())
+                .option(ChannelOption.AUTO_READ, false)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, connectionPools.getConfig().getWriteBufferWaterMark())
+                .handler(new TunnelRelayHandler(ctx.channel(), session, false));
+        connectionPools.getTransport().configureTunnel(bootstrap, connectionPools.getConfig());
 
         ChannelFuture connectFuture = bootstrap.connect(host, port);
         connectFuture.addListener(new ChannelFutureListener() {
@@ -108,27 +139,95 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
                     System.out.println("✅ HTTPS tunnel established to " + host + ":" + port);
 
                     // Dodajemy handler do przekazywania danych od klienta do serwera
-                    ctx.pipeline().addLast(new TunnelingFrontendHandler(backendChannel));
+                    ctx.pipeline().addLast(new TunnelRelayHandler(backendChannel, session, true));
+
+                    if (connectionPools.getConfig().isTunnelSplice()
+                            && ctx.channel() instanceof AbstractEpollStreamChannel
+                            && backendChannel instanceof AbstractEpollStreamChannel) {
+                        startSplice((AbstractEpollStreamChannel) ctx.channel(),
+                                (AbstractEpollStreamChannel) backendChannel, session);
+                        return;
+                    }
 
                     // Ustawiamy wzajemne przekazywanie danych
                     ctx.channel().config().setAutoRead(true);
                     backendChannel.config().setAutoRead(true);
                 } else {
                     System.err.println("❌ Failed to establish HTTPS tunnel: " + future.cause().getMessage());
-                    DefaultFullHttpResponse errorResponse = new DefaultFullHttpResponse(
-                            HttpVersion.HTTP_1_1,
-                            HttpResponseStatus.BAD_GATEWAY,
-                            Unpooled.copiedBuffer("Failed to establish HTTPS tunnel: " +
-                                    future.cause().getMessage(), CharsetUtil.UTF_8)
-                    );
-                    ctx.writeAndFlush(errorResponse).addListener(ChannelFutureListener.CLOSE);
+                    // Kodek HTTP jest już usunięty, więc odpowiedź 502 nie ma sensu - zamykamy połączenie
+                    ctx.close();
                 }
             }
         });
     }
 
+    private static void startSplice(AbstractEpollStreamChannel client, AbstractEpollStreamChannel server,
+                                    TunnelSession session) {
+        // Połączenie do serwera jest już level-triggered (TransportType.configureTunnel). Kanał klienta
+        // przyjął zwykły serwer HTTP - tryb zmieniamy mu dopiero teraz, wyrejestrowując go na chwilę
+        EventLoop eventLoop = client.eventLoop();
+        client.deregister().addListener((ChannelFutureListener) deregistered -> {
+            if (!deregistered.isSuccess()) {
+                closeTunnel(client, server, deregistered.cause());
+                return;
+            }
+            client.config().setEpollMode(EpollMode.LEVEL_TRIGGERED);
+            eventLoop.register(client).addListener((ChannelFutureListener) registered -> {
+                if (!registered.isSuccess()) {
+                    closeTunnel(client, server, registered.cause());
+                    return;
+                }
+                splice(client, server, session, true, SPLICE_MIN_CHUNK_BYTES);
+                splice(server, client, session, false, SPLICE_MIN_CHUNK_BYTES);
+                client.config().setAutoRead(true);
+                server.config().setAutoRead(true);
+                System.out.println("⚡ Zero-copy splice enabled for tunnel");
+            });
+        });
+    }
+
+    private static void closeTunnel(Channel client, Channel server, Throwable cause) {
+        System.err.println("❌ Cannot switch tunnel to splice: " + cause.getMessage());
+        client.close();
+        server.close();
+    }
+
+    private static void splice(AbstractEpollStreamChannel from, AbstractEpollStreamChannel to,
+                               TunnelSession session, boolean upstream, int chunkBytes) {
+        // Netty zgłasza tylko ukończone porcje - ile przeszło w porcji przerwanej zamknięciem, nie wiadomo.
+        // Zaczynamy więc od małej porcji i podwajamy ją, żeby krótkie tunele były policzone niemal w całości.
+        from.spliceTo(to, chunkBytes).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                session.record(upstream, chunkBytes);
+                splice(from, to, session, upstream, Math.min(chunkBytes * 2, SPLICE_MAX_CHUNK_BYTES));
+            } else {
+                from.close();
+                TunnelRelayHandler.closeOnFlush(to);
+            }
+        });
+    }
+
+    private void startInterception(ChannelHandlerContext ctx, String host, int port) {
+        mitmHost = host;
+        mitmPort = port;
+
+        // Odpowiedź 200 jest już w buforze wyjściowym, więc TLS obejmie dopiero kolejne bajty.
+        // Certyfikat dla hosta (z SNI, a bez SNI - z CONNECT) jest generowany poza event loopem.
+        ctx.pipeline().addFirst("mitmSni", new SniHandler(
+                (hostname, promise) -> mitmContexts.map(hostname != null ? hostname : host, promise)));
+
+        System.out.println("🕵️ Intercepting HTTPS traffic for " + host + ":" + port);
+    }
+
     private void connectToRealServer(ChannelHandlerContext ctx, HttpRequest request) {
         this.clientContext = ctx;
+        // Poprzednie połączenie wróciło już do puli - nie wolno do niego pisać
+        this.backendChannel = null;
+        this.backendHandler = null;
+        this.connecting = true;
+        this.currentTransaction = null;
+        this.requestBodyCapture = null;
+        this.requestBodyRewriter = null;
 
         try {
             String originalUri = request.uri();
@@ -149,6 +248,12 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
                 targetHost = uri.getHost();
                 targetPort = uri.getPort() > 0 ? uri.getPort() : 443;
                 isHttps = true;
+            } else if (mitmHost != null) {
+                // Odszyfrowane żądanie z przechwyconego tunelu - cel znamy z CONNECT
+                targetHost = mitmHost;
+                targetPort = mitmPort;
+                isHttps = true;
+                originalUri = "https://" + mitmHost + (mitmPort != 443 ? ":" + mitmPort : "") + originalUri;
             } else {
                 // Dla względnych URL, używamy hosta z nagłówka
                 String hostHeader = request.headers().get(HttpHeaderNames.HOST);
@@ -165,6 +270,8 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
                 isHttps = false;
             }
 
+            boolean rewritten = applyRequestRewrites(request, originalUri);
+
             // Finalne zmienne dla klas wewnętrznych
             final String finalTargetHost = targetHost;
             final int finalTargetPort = targetPort;
@@ -176,56 +283,56 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
             // Tworzymy transakcję
             final HttpTransaction transaction = new HttpTransaction();
             transaction.setMethod(request.method().name());
+            transaction.setHost(finalTargetHost);
             transaction.setUrl(originalUri);
-            transaction.setRequestHeaders(request.headers().toString());
+            transaction.setRequestHeaderBytes(HeaderBytes.of(request.headers()));
             transaction.setEncrypted(finalIsHttps);
+            transaction.setModified(rewritten);
 
+            currentTransaction = transaction;
+            requestBodyCapture = new BodyCapture(connectionPools.getConfig().getCaptureMaxBodyBytes());
             if (mainController != null) {
-                mainController.addHttpTransaction(transaction);
-                currentTransaction = transaction;
+                mainController.requestStarted(transaction);
             }
 
-            // Łączymy się z rzeczywistym serwerem
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(ctx.channel().eventLoop())
-                    .channel(ctx.channel().getClass())
-                    .handler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) throws Exception {
-                            if (finalIsHttps) {
-                                // Dodajemy SSL handler dla HTTPS
-                                ch.pipeline().addLast(sslContext.newHandler(ch.alloc(), finalTargetHost, finalTargetPort));
-                            }
-                            ch.pipeline().addLast(new HttpClientCodec());
-                            ch.pipeline().addLast(new HttpObjectAggregator(10485760)); // 10MB limit
-                            ch.pipeline().addLast(new RealServerHandler(ctx.channel(), mainController, transaction));
-                        }
-                    });
-
-            ChannelFuture future = bootstrap.connect(finalTargetHost, finalTargetPort);
+            // Pobieramy połączenie z puli (lub otwieramy nowe)
+            if (connectionPool == null) {
+                connectionPool = connectionPools.forChannel(ctx.channel());
+            }
+            UpstreamKey upstreamKey = new UpstreamKey(finalIsHttps ? "https" : "http", finalTargetHost, finalTargetPort);
+            ChannelFuture future = connectionPool.acquire(upstreamKey);
             future.addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
+                    connecting = false;
                     if (future.isSuccess()) {
                         backendChannel = future.channel();
+                        backendHandler = new RealServerHandler(ctx.channel(), mainController, transaction,
+                                connectionPool, connectionPools.getConfig().getCaptureMaxBodyBytes(),
+                                ProxyFrontendHandler.this, HttpUtil.isKeepAlive(request));
+                        connectionPool.attach(backendChannel, ctx.channel(), backendHandler);
                         System.out.println("✅ Connected to server: " + finalTargetHost + ":" + finalTargetPort);
 
-                        // Przekaż oryginalne żądanie do serwera
+                        // Przekaż oryginalne żądanie do serwera i zacznij czytać odpowiedź
                         if (request instanceof FullHttpRequest) {
-                            backendChannel.writeAndFlush(((FullHttpRequest) request).retain());
+                            backendChannel.write(((FullHttpRequest) request).retain());
+                            backendHandler.requestSent();
                         } else {
-                            backendChannel.writeAndFlush(request);
+                            backendChannel.write(request);
                         }
+                        flushPendingContent();
+                        backendChannel.read();
                     } else {
                         System.err.println("❌ Failed to connect to server: " + future.cause().getMessage());
+                        releasePendingContent();
 
                         // Uaktualnij transakcję o błąd
-                        if (transaction != null) {
+                        if (transaction != null && transaction.markCompleted()) {
                             transaction.setStatusCode(502);
                             transaction.setResponseBody("Failed to connect to server: " +
                                     future.cause().getMessage());
                             if (mainController != null) {
-                                mainController.addHttpTransaction(transaction);
+                                mainController.failed(transaction, future.cause());
                             }
                         }
 
@@ -243,13 +350,15 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
 
         } catch (Exception e) {
             System.err.println("❌ Error connecting to server: " + e.getMessage());
+            connecting = false;
+            releasePendingContent();
 
             // Uaktualnij transakcję o błąd
-            if (currentTransaction != null) {
+            if (currentTransaction != null && currentTransaction.markCompleted()) {
                 currentTransaction.setStatusCode(500);
                 currentTransaction.setResponseBody("Proxy error: " + e.getMessage());
                 if (mainController != null) {
-                    mainController.addHttpTransaction(currentTransaction);
+                    mainController.failed(currentTransaction, e);
                 }
             }
 
@@ -262,17 +371,85 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // Nagłówki zmieniamy przed zapisem transakcji, więc podgląd pokazuje żądanie wysłane do serwera
+    private boolean applyRequestRewrites(HttpRequest request, String url) {
+        if (mainController == null) {
+            return false;
+        }
+        RewritePlan plan = mainController.planRequestRewrite(url);
+        if (plan == null) {
+            return false;
+        }
+        plan.applyHeaders(request);
+        if (plan.hasBodyRewrite()) {
+            // Zagregowane żądanie jest przepisywane od razu, strumieniowe - w channelRead, kawałek po kawałku
+            requestBodyRewriter = plan.prepareBody(request);
+        }
+        return true;
+    }
+
+    private void captureRequestContent(HttpContent content) {
+        if (requestBodyCapture == null) {
+            return;
+        }
+        requestBodyCapture.append(content.content());
+        if (content instanceof LastHttpContent && currentTransaction != null) {
+            // Surowe bajty - dekodowanie dopiero przy wyświetlaniu
+            currentTransaction.setRequestBodyBytes(requestBodyCapture.toBytes());
+            currentTransaction.setRequestBodyLength(requestBodyCapture.getTotalLength());
+            currentTransaction.setRequestBodyHash(requestBodyCapture.getHash());
+            currentTransaction.setBytesSent(requestBodyCapture.getTotalLength());
+            requestBodyCapture = null;
+        }
+    }
+
+    private void flushPendingContent() {
+        // Body buforowane w trakcie łączenia idzie do serwera w oryginalnej kolejności, jednym flushem
+        HttpContent content;
+        while ((content = pendingContent.poll()) != null) {
+            backendChannel.write(content);
+            if (content instanceof LastHttpContent) {
+                backendHandler.requestSent();
+            }
+        }
+        pendingBytes = 0;
+        backendChannel.flush();
+        // Serwer nie przyjmuje już więcej - odczyt od klienta wznowi RealServerHandler.channelWritabilityChanged
+        if (clientContext != null && backendChannel.isWritable()) {
+            clientContext.read();
+        }
+    }
+
+    /**
+     * Wywoływane przez RealServerHandler, gdy połączenie z serwerem wróciło do puli lub zostało zamknięte.
+     * Od tej chwili kawałki body żądania nie mogą już do niego trafić.
+     */
+    void backendReleased(Channel upstream) {
+        if (backendChannel == upstream) {
+            backendChannel = null;
+            backendHandler = null;
+        }
+    }
+
+    private void releasePendingContent() {
+        HttpContent content;
+        while ((content = pendingContent.poll()) != null) {
+            content.release();
+        }
+        pendingBytes = 0;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         System.err.println("❌ Error in ProxyFrontendHandler: " + cause.getMessage());
         cause.printStackTrace();
 
         // Uaktualnij transakcję o błąd
-        if (currentTransaction != null) {
+        if (currentTransaction != null && currentTransaction.markCompleted()) {
             currentTransaction.setStatusCode(500);
             currentTransaction.setResponseBody("Proxy handler error: " + cause.getMessage());
             if (mainController != null) {
-                mainController.addHttpTransaction(currentTransaction);
+                mainController.failed(currentTransaction, cause);
             }
         }
 
@@ -281,8 +458,14 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        System.out.println("🔌 Client connection closed");
-        if (backendChannel != null && backendChannel.isActive()) {
+        releasePendingContent();
+        long peakOutbound = OutboundBufferStats.peak(ctx.channel());
+        metrics.recordOutboundPeak(peakOutbound);
+        System.out.println("🔌 Client connection closed (peak outbound buffer: " + peakOutbound + " B)");
+        if (backendChannel != null && connectionPool != null) {
+            // Połączenie mogło już wrócić do puli - zamykamy je tylko jeśli nadal jest nasze
+            connectionPool.discard(backendChannel, ctx.channel());
+        } else if (backendChannel != null && backendChannel.isActive()) {
             backendChannel.close();
         }
         super.channelInactive(ctx);
@@ -292,18 +475,34 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         System.out.println("✅ Client connected: " + ctx.channel().remoteAddress());
         super.channelActive(ctx);
+        ctx.read();
     }
 
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        // Dla tunelu HTTPS, po prostu przekazujemy dane dalej
-        if (isHttpsTunnel) {
-            if (backendChannel != null && backendChannel.isActive()) {
-                backendChannel.writeAndFlush(msg);
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // Czytamy dalej od klienta tylko, jeśli serwer nadąża przyjmować body żądania,
+        // a w trakcie łączenia - dopóki bufor oczekującego body nie przekroczy limitu
+        if (connecting) {
+            if (pendingBytes < connectionPools.getConfig().getPendingRequestBytesLimit()) {
+                ctx.read();
             }
-            return;
+        } else if (backendChannel == null || backendChannel.isWritable()) {
+            ctx.read();
         }
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // Klient znów odbiera dane - wznawiamy odczyt odpowiedzi z serwera
+        if (ctx.channel().isWritable() && backendChannel != null && backendChannel.isActive()) {
+            backendChannel.read();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
 
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof HttpRequest) {
             HttpRequest request = (HttpRequest) msg;
             System.out.println("📨 HTTP " + request.method() + " " + request.uri());
@@ -315,92 +514,35 @@ public class ProxyFrontendHandler extends ChannelInboundHandlerAdapter {
                 System.out.println("🌐 HTTP request: " + request.uri());
                 connectToRealServer(ctx, request);
             }
-        } else if (backendChannel != null && backendChannel.isActive()) {
-            // Przekaż inne wiadomości (np. HttpContent) do backendu
-            backendChannel.writeAndFlush(msg);
-        } else if (msg instanceof HttpContent) {
-            // Jeśli nie ma aktywnego backendChannel, zwolnij zasoby
-            ((HttpContent) msg).release();
-        }
-    }
-
-    // Handler dla tunelowania HTTPS - przekazywanie od klienta do serwera
-    private static class TunnelingFrontendHandler extends ChannelInboundHandlerAdapter {
-        private final Channel backendChannel;
-
-        public TunnelingFrontendHandler(Channel backendChannel) {
-            this.backendChannel = backendChannel;
-        }
-
-        @Override
-        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-            // Przekazujemy dane z frontendu do backendu
-            backendChannel.writeAndFlush(msg).addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (future.isSuccess()) {
-                        ctx.read();
-                    } else {
-                        future.channel().close();
-                    }
-                }
-            });
-        }
-
-        @Override
-        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-            System.out.println("🔌 HTTPS tunnel frontend connection closed");
-            if (backendChannel != null && backendChannel.isActive()) {
-                backendChannel.close();
-            }
+            return;
         }
 
-        @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-            System.err.println("❌ Error in HTTPS tunnel frontend: " + cause.getMessage());
-            cause.printStackTrace();
-            if (backendChannel != null && backendChannel.isActive()) {
-                backendChannel.close();
+        if (requestBodyRewriter != null && msg instanceof HttpContent) {
+            HttpContent rewritten = requestBodyRewriter.rewrite((HttpContent) msg);
+            if (rewritten instanceof LastHttpContent) {
+                requestBodyRewriter = null;
             }
-            ctx.close();
-        }
-    }
-
-    // Handler dla tunelowania HTTPS - przekazywanie od serwera do klienta
-    private static class TunnelingBackendHandler extends ChannelInboundHandlerAdapter {
-        private final Channel frontendChannel;
-
-        public TunnelingBackendHandler(Channel frontendChannel) {
-            this.frontendChannel = frontendChannel;
-        }
-
-        @Override
-        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-            // Przekazujemy dane z backendu do frontendu
-            frontendChannel.writeAndFlush(msg).addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (future.isSuccess()) {
-                        ctx.read();
-                    } else {
-                        future.channel().close();
-                    }
-                }
-            });
+            msg = rewritten;
         }
 
-        @Override
-        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-            System.out.println("🔌 HTTPS tunnel backend connection closed");
-            frontendChannel.close();
+        if (msg instanceof HttpContent) {
+            captureRequestContent((HttpContent) msg);
         }
 
-        @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-            System.err.println("❌ Error in HTTPS tunnel backend: " + cause.getMessage());
-            cause.printStackTrace();
-            frontendChannel.close();
-            ctx.close();
+        if (connecting && msg instanceof HttpContent) {
+            // Połączenie z serwerem jeszcze trwa - zachowujemy body zamiast je gubić
+            HttpContent content = (HttpContent) msg;
+            pendingBytes += content.content().readableBytes();
+            pendingContent.add(content);
+        } else if (backendChannel != null && backendChannel.isActive()) {
+            // Przekaż inne wiadomości (np. HttpContent) do backendu
+            backendChannel.writeAndFlush(msg);
+            if (msg instanceof LastHttpContent && backendHandler != null) {
+                backendHandler.requestSent();
+            }
+        } else if (msg instanceof HttpContent) {
+            // Jeśli nie ma aktywnego backendChannel, zwolnij zasoby
+            ((HttpContent) msg).release();
         }
     }
 }
\ No newline at end of file
@@ -6,13 +6,23 @@ import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import pl.proxion.controller.MainController;
+import pl.proxion.proxy.ProxyMetrics;
+import pl.proxion.proxy.pool.UpstreamConnectionPools;
+import pl.proxion.proxy.ssl.MitmSslContexts;
 
 public class ProxyInitializer extends ChannelInitializer<SocketChannel> {
 
     private MainController mainController;
+    private UpstreamConnectionPools connectionPools;
+    private MitmSslContexts mitmContexts;
+    private ProxyMetrics metrics;
 
-    public ProxyInitializer(MainController controller) {
+    public ProxyInitializer(MainController controller, UpstreamConnectionPools connectionPools,
+                            MitmSslContexts mitmContexts, ProxyMetrics metrics) {
         this.mainController = controller;
+        this.connectionPools = connectionPools;
+        this.mitmContexts = mitmContexts;
+        this.metrics = metrics;
     }
 
     @Override
@@ -22,8 +32,7 @@ public class ProxyInitializer extends ChannelInitializer<SocketChannel> {
         ch.pipeline().addLast(
                 new LoggingHandler(LogLevel.INFO),
                 new HttpServerCodec(), // HTTP codec
-                new HttpTrafficHandler(mainController), // Traffic monitor
-                new ProxyFrontendHandler(mainController) // Main proxy handler
+                new ProxyFrontendHandler(mainController, connectionPools, mitmContexts, metrics) // Main proxy handler + capture
         );
 
         System.out.println("✅ Pipeline setup complete");
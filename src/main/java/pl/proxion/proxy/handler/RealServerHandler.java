@@ -6,103 +6,227 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.handler.codec.http.*;
-import io.netty.util.CharsetUtil;
+import pl.proxion.capture.BodyCapture;
 import pl.proxion.controller.MainController;
+import pl.proxion.model.HeaderBytes;
 import pl.proxion.model.HttpTransaction;
+import pl.proxion.proxy.pool.UpstreamConnectionPool;
+import pl.proxion.rewrite.RewritePlan;
+import pl.proxion.rewrite.RewriteRuleSet;
+import pl.proxion.rewrite.StreamingBodyRewriter;
 
+/**
+ * Przekazuje odpowiedź serwera do klienta kawałek po kawałku, bez agregowania całego body.
+ * Reguły rewrite zmieniają status i nagłówki odpowiedzi, a body - strumieniowo, kawałek po kawałku.
+ * Do podglądu zapisywany jest ograniczony początek body w postaci wysłanej do klienta.
+ */
 public class RealServerHandler extends ChannelInboundHandlerAdapter {
 
     private final Channel clientChannel;
     private final MainController mainController;
     private final HttpTransaction transaction;
+    private final UpstreamConnectionPool connectionPool;
+    private final BodyCapture bodyCapture;
+    private final ProxyFrontendHandler frontend;
+    private final boolean requestKeepAlive;
+    private boolean completed;
+    // Całe żądanie (z LastHttpContent) zostało przekazane do serwera
+    private boolean requestSent;
+    private boolean keepAlive;
+    private boolean informational;
+    private StreamingBodyRewriter bodyRewriter;
 
-    public RealServerHandler(Channel clientChannel, MainController mainController, HttpTransaction transaction) {
+    public RealServerHandler(Channel clientChannel, MainController mainController, HttpTransaction transaction,
+                             UpstreamConnectionPool connectionPool, int captureLimit,
+                             ProxyFrontendHandler frontend, boolean requestKeepAlive) {
         this.clientChannel = clientChannel;
         this.mainController = mainController;
         this.transaction = transaction;
+        this.connectionPool = connectionPool;
+        this.bodyCapture = new BodyCapture(captureLimit);
+        this.frontend = frontend;
+        this.requestKeepAlive = requestKeepAlive;
     }
 
+    /**
+     * Wywoływane przez ProxyFrontendHandler po przekazaniu ostatniego kawałka żądania do serwera.
+     * Oba handlery działają na tej samej pętli zdarzeń, więc zapis jest już w kolejce połączenia.
+     */
+    void requestSent() {
+        requestSent = true;
+    }
+
+    @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (msg instanceof FullHttpResponse) {
-            FullHttpResponse response = (FullHttpResponse) msg;
-
-            int originalStatusCode = response.status().code();
-            int finalStatusCode = originalStatusCode;
-            boolean wasModified = false;
-
-            // Zastosuj reguły rewrite jeśli mamy dostęp do kontrolera i URL
-            if (mainController != null && transaction != null && transaction.getUrl() != null) {
-                int newStatusCode = mainController.applyStatusCodeRewrite(originalStatusCode, transaction.getUrl());
-                if (newStatusCode != originalStatusCode) {
-                    response = createModifiedResponse(response, newStatusCode);
-                    finalStatusCode = newStatusCode;
-                    wasModified = true;
-                    System.out.println("🔄 Rewrote status code: " + originalStatusCode + " → " + newStatusCode);
-                }
+        if (msg instanceof HttpResponse) {
+            handleResponseHead((HttpResponse) msg);
+        }
+
+        if (bodyRewriter != null && msg instanceof HttpContent && !(msg instanceof HttpResponse)) {
+            msg = bodyRewriter.rewrite((HttpContent) msg);
+        }
+
+        if (msg instanceof HttpContent) {
+            HttpContent content = (HttpContent) msg;
+            if (!informational) {
+                bodyCapture.append(content.content());
             }
 
-            // Uzupełnij transakcję o odpowiedź
-            if (transaction != null) {
-                transaction.setStatusCode(finalStatusCode);
-                transaction.setOriginalStatusCode(originalStatusCode);
-                transaction.setModified(wasModified);
-                transaction.setResponseHeaders(response.headers().toString());
-
-                if (response.content().readableBytes() > 0) {
-                    try {
-                        String responseBody = response.content().toString(CharsetUtil.UTF_8);
-                        transaction.setResponseBody(responseBody);
-                        System.out.println("📄 Response body: " + responseBody.length() + " characters");
-                    } catch (Exception e) {
-                        System.out.println("🔒 Encrypted response detected, storing as binary data");
-                        transaction.setResponseBody("[ENCRYPTED CONTENT - " + response.content().readableBytes() + " bytes]");
-                    }
-                } else {
-                    transaction.setResponseBody("[EMPTY RESPONSE]");
+            if (msg instanceof LastHttpContent) {
+                if (informational) {
+                    // 1xx (np. 100 Continue) - właściwa odpowiedź dopiero nadejdzie
+                    informational = false;
+                    clientChannel.writeAndFlush(msg);
+                    return;
                 }
+                completeResponse(ctx, msg);
+                return;
+            }
+        }
 
-                // Odśwież w kontrolerze
-                if (mainController != null) {
-                    mainController.addHttpTransaction(transaction);
+        // Przekaż kawałek odpowiedzi do klienta (flush w channelReadComplete)
+        clientChannel.write(msg).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    future.channel().close();
                 }
             }
+        });
+    }
 
-            System.out.println("📨 Response from server: " + originalStatusCode +
-                    (wasModified ? " → " + finalStatusCode + " (MODIFIED)" : ""));
-
-            // Przekaż odpowiedź do klienta
-            clientChannel.writeAndFlush(response.retain()).addListener(new ChannelFutureListener() {
-                @Override
-                public void operationComplete(ChannelFuture future) throws Exception {
-                    if (future.isSuccess()) {
-                        ctx.read();
-                    } else {
-                        future.channel().close();
-                    }
-                }
-            });
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        OutboundBufferStats.record(clientChannel);
+        clientChannel.flush();
+        // Czytamy dalej tylko, gdy klient nadąża - inaczej czekamy na channelWritabilityChanged klienta
+        if (clientChannel.isWritable()) {
+            ctx.read();
+        }
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // Serwer znów przyjmuje body żądania - wznawiamy odczyt od klienta
+        if (ctx.channel().isWritable()) {
+            clientChannel.read();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    private void handleResponseHead(HttpResponse response) {
+        int originalStatusCode = response.status().code();
+        int finalStatusCode = originalStatusCode;
+        boolean wasModified = false;
+
+        informational = originalStatusCode >= 100 && originalStatusCode < 200 && originalStatusCode != 101;
+        if (informational) {
+            return;
+        }
+
+        // Zastosuj reguły rewrite - status i nagłówki od razu, body strumieniowo w channelRead
+        if (mainController != null && transaction != null && transaction.getUrl() != null) {
+            // Mierzymy samą ocenę reguł (histogram w zakładce rewrite); trafienia liczą reguły
+            long evaluationStart = System.nanoTime();
+            // Jedna migawka na odpowiedź - przeładowanie reguł w trakcie nie rozdzieli statusu i nagłówków
+            RewriteRuleSet rules = mainController.getCompiledRules();
+            int newStatusCode = mainController.applyStatusCodeRewrite(rules, originalStatusCode, transaction.getUrl());
+            RewritePlan plan = mainController.planResponseRewrite(rules, originalStatusCode, transaction.getUrl());
+            mainController.recordRuleEvaluation(System.nanoTime() - evaluationStart);
+
+            if (newStatusCode != originalStatusCode) {
+                response.setStatus(HttpResponseStatus.valueOf(newStatusCode));
+                finalStatusCode = newStatusCode;
+                wasModified = true;
+            }
+            if (plan != null) {
+                applyMessageRewrites(response, plan);
+                wasModified = true;
+            }
         }
+
+        // Połączenie nadaje się do ponownego użycia tylko, gdy obie strony zgodziły się na keep-alive
+        keepAlive = requestKeepAlive && HttpUtil.isKeepAlive(response);
+
+        if (transaction != null) {
+            transaction.setStatusCode(finalStatusCode);
+            transaction.setOriginalStatusCode(originalStatusCode);
+            transaction.setModified(transaction.isModified() || wasModified);
+            transaction.setResponseHeaderBytes(HeaderBytes.of(response.headers()));
+            if (mainController != null) {
+                mainController.responseHeaders(transaction);
+            }
+        }
+
+        System.out.println("📨 Response from server: " + originalStatusCode +
+                (wasModified ? " → " + finalStatusCode + " (MODIFIED)" : ""));
     }
 
-    private FullHttpResponse createModifiedResponse(FullHttpResponse originalResponse, int newStatusCode) {
-        // Tworzymy nową odpowiedź z zmienionym status code
-        FullHttpResponse modifiedResponse = new DefaultFullHttpResponse(
-                originalResponse.protocolVersion(),
-                HttpResponseStatus.valueOf(newStatusCode),
-                originalResponse.content().copy(),
-                originalResponse.headers().copy(),
-                originalResponse.trailingHeaders().copy()
-        );
+    // Reguły nagłówków i body - dopasowane do oryginalnego statusu serwera
+    private void applyMessageRewrites(HttpResponse response, RewritePlan plan) {
+        plan.applyHeaders(response);
+        if (plan.hasBodyRewrite() && hasBody(response)) {
+            // Dla odpowiedzi zagregowanej body jest przepisane od razu; wtedy nie ma czego strumieniować
+            bodyRewriter = plan.prepareBody(response);
+        }
+    }
+
+    private boolean hasBody(HttpResponse response) {
+        int code = response.status().code();
+        return code != 204 && code != 304 && !"HEAD".equals(transaction.getMethod());
+    }
+
+    private void completeResponse(ChannelHandlerContext ctx, Object lastContent) {
+        if (transaction != null && transaction.markCompleted()) {
+            // Surowe bajty - dekodowanie dopiero przy wyświetlaniu
+            transaction.setResponseBodyBytes(bodyCapture.toBytes());
+            transaction.setResponseBodyLength(bodyCapture.getTotalLength());
+            transaction.setResponseBodyHash(bodyCapture.getHash());
+            if (!bodyCapture.isEmpty()) {
+                System.out.println("📄 Response body: " + bodyCapture.getTotalLength() + " bytes");
+            }
+
+            transaction.setBytesReceived(bodyCapture.getTotalLength());
+            transaction.setDurationMillis(
+                    (HttpTransaction.currentEpochNanos() - transaction.getTimestampNanos()) / 1_000_000);
 
-        // Aktualizuj nagłówek Content-Length jeśli potrzeba
-        HttpUtil.setContentLength(modifiedResponse, modifiedResponse.content().readableBytes());
+            // Jedno zdarzenie zakończenia - wiersz dodany przy requestStarted zostaje odświeżony
+            if (mainController != null) {
+                mainController.completed(transaction);
+            }
+        }
+        completed = true;
 
-        return modifiedResponse;
+        clientChannel.writeAndFlush(lastContent).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess() && keepAlive) {
+                    // Gotowi na kolejne żądanie od klienta
+                    future.channel().read();
+                } else {
+                    // Odpowiedź z "Connection: close" - klient oczekuje zamknięcia połączenia
+                    future.channel().close();
+                }
+            }
+        });
+
+        if (requestSent) {
+            // Odpowiedź i żądanie kompletne - połączenie wraca do puli (handler zostaje odpięty)
+            connectionPool.release(ctx.channel(), keepAlive);
+        } else {
+            // Serwer odpowiedział przed końcem body żądania - reszta body trafiłaby do połączenia,
+            // które z puli mógł już dostać inny klient. Zamykamy je, nie zamykając przy tym klienta.
+            ctx.pipeline().remove(this);
+            connectionPool.discard(ctx.channel(), clientChannel);
+        }
+        frontend.backendReleased(ctx.channel());
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         System.out.println("🔌 Connection to real server closed");
+        failIfIncomplete(new IllegalStateException("Upstream closed before response completed"));
         clientChannel.close();
     }
 
@@ -110,7 +234,30 @@ public class RealServerHandler extends ChannelInboundHandlerAdapter {
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         System.err.println("❌ Error in RealServerHandler: " + cause.getMessage());
         cause.printStackTrace();
+        failIfIncomplete(cause);
         ctx.close();
         clientChannel.close();
     }
-}
\ No newline at end of file
+
+    private void failIfIncomplete(Throwable cause) {
+        if (completed || transaction == null || !transaction.markCompleted()) {
+            return;
+        }
+        completed = true;
+        if (transaction.getStatusCode() == 0) {
+            transaction.setStatusCode(502);
+        }
+        if (bodyCapture.isEmpty()) {
+            transaction.setResponseBody("Upstream error: " + cause.getMessage());
+        } else {
+            // Zachowujemy to, co zdążyło przyjść, z informacją, że body jest ucięte
+            transaction.setIncompleteCause(String.valueOf(cause.getMessage()));
+            transaction.setResponseBodyBytes(bodyCapture.toBytes());
+            transaction.setResponseBodyLength(bodyCapture.getTotalLength());
+            transaction.setResponseBodyHash(bodyCapture.getHash());
+        }
+        if (mainController != null) {
+            mainController.failed(transaction, cause);
+        }
+    }
+}
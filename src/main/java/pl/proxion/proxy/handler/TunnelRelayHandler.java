@@ -0,0 +1,77 @@
+package pl.proxion.proxy.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Przekazuje surowe bajty tunelu CONNECT w jedną stronę, bez zaglądania w treść.
+ * Zapisy są flushowane raz na paczkę odczytów, a odczyt źródła jest wstrzymywany,
+ * gdy kanał docelowy nie nadąża (writability).
+ * Przy splice (epoll) dane omijają pipeline - handler obsługuje wtedy tylko zamknięcie tunelu.
+ */
+class TunnelRelayHandler extends ChannelInboundHandlerAdapter {
+
+    private final Channel target;
+    private final TunnelSession session;
+    private final boolean upstream;
+
+    TunnelRelayHandler(Channel target, TunnelSession session, boolean upstream) {
+        this.target = target;
+        this.session = session;
+        this.upstream = upstream;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof ByteBuf) {
+            session.record(upstream, ((ByteBuf) msg).readableBytes());
+        }
+        target.write(msg, target.voidPromise());
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        ChannelOutboundBuffer buffer = target.unsafe().outboundBuffer();
+        if (buffer != null) {
+            session.recordOutbound(buffer.totalPendingWriteBytes());
+        }
+        target.flush();
+        if (!target.isWritable()) {
+            // Druga strona nie nadąża - przestajemy czytać, aż bufor wyjściowy się opróżni
+            ctx.channel().config().setAutoRead(false);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            // Ten kanał znów przyjmuje dane - wznawiamy odczyt z kanału, który do niego pisze
+            target.config().setAutoRead(true);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        session.close();
+        closeOnFlush(target);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        System.err.println("❌ Error in HTTPS tunnel: " + cause.getMessage());
+        ctx.close();
+        closeOnFlush(target);
+    }
+
+    static void closeOnFlush(Channel channel) {
+        if (channel.isActive()) {
+            channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
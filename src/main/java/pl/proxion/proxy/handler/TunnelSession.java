@@ -0,0 +1,58 @@
+package pl.proxion.proxy.handler;
+
+import pl.proxion.controller.MainController;
+import pl.proxion.model.HttpTransaction;
+import pl.proxion.proxy.ProxyMetrics;
+
+/**
+ * Liczniki jednego tunelu CONNECT. Obie strony tunelu działają na tym samym event loopie,
+ * więc pola nie wymagają synchronizacji.
+ */
+class TunnelSession {
+
+    private final HttpTransaction transaction;
+    private final MainController mainController;
+    private final ProxyMetrics metrics;
+    private final long startNanos = System.nanoTime();
+    private long bytesSent;
+    private long bytesReceived;
+    private long peakOutboundBytes;
+    private boolean closed;
+
+    TunnelSession(HttpTransaction transaction, MainController mainController, ProxyMetrics metrics) {
+        this.transaction = transaction;
+        this.mainController = mainController;
+        this.metrics = metrics;
+    }
+
+    void recordOutbound(long pendingBytes) {
+        peakOutboundBytes = Math.max(peakOutboundBytes, pendingBytes);
+    }
+
+    void record(boolean upstream, long bytes) {
+        if (upstream) {
+            bytesSent += bytes;
+        } else {
+            bytesReceived += bytes;
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        transaction.setBytesSent(bytesSent);
+        transaction.setBytesReceived(bytesReceived);
+        transaction.setDurationMillis(durationMillis);
+        metrics.recordOutboundPeak(peakOutboundBytes);
+        System.out.println("🔌 HTTPS tunnel closed: " + transaction.getUrl() + " (" + bytesSent + " B sent, "
+                + bytesReceived + " B received, " + durationMillis + " ms, peak outbound " + peakOutboundBytes + " B)");
+
+        if (mainController != null && transaction.markCompleted()) {
+            mainController.completed(transaction);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package pl.proxion.proxy.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.util.AttributeKey;
+import pl.proxion.proxy.ProxyConfig;
+import pl.proxion.proxy.ssl.TlsClientContexts;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pula połączeń keep-alive do serwerów docelowych, przypisana do jednego event loopa.
+ * Wszystkie metody muszą być wywoływane z wątku tego event loopa.
+ */
+public class UpstreamConnectionPool {
+
+    public static final String HANDLER_NAME = "realServerHandler";
+
+    private static final AttributeKey<UpstreamKey> UPSTREAM_KEY = AttributeKey.valueOf("proxion.upstreamKey");
+    private static final AttributeKey<Channel> CLIENT_CHANNEL = AttributeKey.valueOf("proxion.clientChannel");
+    private static final AttributeKey<Long> IDLE_SINCE = AttributeKey.valueOf("proxion.idleSince");
+
+    private final EventLoop eventLoop;
+    private final ProxyConfig config;
+    private final UpstreamConnectionPools pools;
+    private final Map<UpstreamKey, ArrayDeque<Channel>> idleChannels = new HashMap<>();
+
+    UpstreamConnectionPool(EventLoop eventLoop, ProxyConfig config, UpstreamConnectionPools pools) {
+        this.eventLoop = eventLoop;
+        this.config = config;
+        this.pools = pools;
+
+        long period = Math.max(1000, config.getUpstreamIdleTimeoutMillis() / 2);
+        eventLoop.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Zwraca wolne połączenie z puli albo otwiera nowe (TCP + ewentualnie TLS).
+     */
+    public ChannelFuture acquire(UpstreamKey key) {
+        Channel idle = pollIdle(key);
+        if (idle != null) {
+            pools.recordHit();
+            return idle.newSucceededFuture();
+        }
+
+        pools.recordMiss();
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(eventLoop)
+                .channel(pools.getTransport().socketChannelClass())
+                // Odpowiedź czytamy tylko wtedy, gdy klient nadąża ją odbierać
+                .option(ChannelOption.AUTO_READ, false)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, config.getWriteBufferWaterMark())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.attr(UPSTREAM_KEY).set(key);
+                        if (key.isHttps()) {
+                            pools.getTlsContexts().addHandler(ch, key.getHost(), key.getPort());
+                        }
+                        ch.pipeline().addLast(new HttpClientCodec());
+                        if (!config.isStreamingRelay()) {
+                            ch.pipeline().addLast(new HttpObjectAggregator(config.getAggregateMaxBytes()));
+                        }
+                    }
+                });
+        pools.getTransport().configureClient(bootstrap, config);
+        return bootstrap.connect(key.getHost(), key.getPort());
+    }
+
+    /**
+     * Podpina handler bieżącego żądania do połączenia wyjętego z puli.
+     */
+    public void attach(Channel upstream, Channel clientChannel, ChannelHandler handler) {
+        upstream.attr(CLIENT_CHANNEL).set(clientChannel);
+        upstream.config().setAutoRead(false);
+        upstream.pipeline().addLast(HANDLER_NAME, handler);
+    }
+
+    /**
+     * Oddaje połączenie do puli po zakończonej odpowiedzi. Połączenia bez keep-alive są zamykane.
+     */
+    public void release(Channel upstream, boolean reusable) {
+        upstream.attr(CLIENT_CHANNEL).set(null);
+        if (upstream.pipeline().get(HANDLER_NAME) != null) {
+            upstream.pipeline().remove(HANDLER_NAME);
+        }
+
+        UpstreamKey key = upstream.attr(UPSTREAM_KEY).get();
+        if (!reusable || key == null || !upstream.isActive()) {
+            upstream.close();
+            return;
+        }
+
+        ArrayDeque<Channel> queue = idleChannels.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (queue.size() >= config.getUpstreamMaxPerHost()) {
+            upstream.close();
+            return;
+        }
+        upstream.attr(IDLE_SINCE).set(System.nanoTime());
+        // Bezczynne połączenie czyta samo, żeby zauważyć zamknięcie przez serwer
+        upstream.config().setAutoRead(true);
+        queue.addLast(upstream);
+    }
+
+    /**
+     * Zamyka połączenie tylko jeśli nadal obsługuje danego klienta
+     * (mogło już wrócić do puli i zostać przydzielone komuś innemu).
+     */
+    public void discard(Channel upstream, Channel clientChannel) {
+        if (upstream.attr(CLIENT_CHANNEL).get() == clientChannel) {
+            upstream.attr(CLIENT_CHANNEL).set(null);
+            upstream.close();
+        }
+    }
+
+    int getIdleCount() {
+        int count = 0;
+        for (ArrayDeque<Channel> queue : idleChannels.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private Channel pollIdle(UpstreamKey key) {
+        ArrayDeque<Channel> queue = idleChannels.get(key);
+        if (queue == null) {
+            return null;
+        }
+        Channel channel;
+        while ((channel = queue.pollLast()) != null) {
+            if (channel.isActive()) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private void evictIdle() {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getUpstreamIdleTimeoutMillis());
+        long now = System.nanoTime();
+
+        Iterator<ArrayDeque<Channel>> queues = idleChannels.values().iterator();
+        while (queues.hasNext()) {
+            ArrayDeque<Channel> queue = queues.next();
+            Iterator<Channel> channels = queue.iterator();
+            while (channels.hasNext()) {
+                Channel channel = channels.next();
+                Long idleSince = channel.attr(IDLE_SINCE).get();
+                if (!channel.isActive() || idleSince == null || now - idleSince > timeoutNanos) {
+                    channels.remove();
+                    channel.close();
+                }
+            }
+            if (queue.isEmpty()) {
+                queues.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package pl.proxion.proxy.pool;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import pl.proxion.proxy.ProxyConfig;
+import pl.proxion.proxy.TransportType;
+import pl.proxion.proxy.ssl.TlsClientContexts;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejestr pul połączeń - jedna pula na każdy event loop, dzięki czemu
+ * sama pula nie potrzebuje synchronizacji.
+ */
+public class UpstreamConnectionPools {
+
+    private final ProxyConfig config;
+    private final TransportType transport;
+    private final TlsClientContexts tlsContexts;
+    private final Map<EventLoop, UpstreamConnectionPool> pools = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UpstreamConnectionPools(ProxyConfig config, TransportType transport, TlsClientContexts tlsContexts) {
+        this.config = config;
+        this.transport = transport;
+        this.tlsContexts = tlsContexts;
+    }
+
+    public UpstreamConnectionPool forChannel(Channel frontendChannel) {
+        return pools.computeIfAbsent(frontendChannel.eventLoop(),
+                loop -> new UpstreamConnectionPool(loop, config, this));
+    }
+
+    public ProxyConfig getConfig() {
+        return config;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public TlsClientContexts getTlsContexts() {
+        return tlsContexts;
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int getIdleCount() {
+        int idle = 0;
+        for (UpstreamConnectionPool pool : pools.values()) {
+            idle += pool.getIdleCount();
+        }
+        return idle;
+    }
+}
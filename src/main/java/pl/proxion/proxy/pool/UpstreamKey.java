@@ -0,0 +1,14 @@
+package pl.proxion.proxy.pool;
+
+import lombok.Data;
+
+@Data
+public class UpstreamKey {
+    private final String scheme;
+    private final String host;
+    private final int port;
+
+    public boolean isHttps() {
+        return "https".equals(scheme);
+    }
+}
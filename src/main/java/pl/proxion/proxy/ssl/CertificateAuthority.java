@@ -0,0 +1,154 @@
+package pl.proxion.proxy.ssl;
+
+import io.netty.util.NetUtil;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lokalne CA Proxion - wystawia certyfikaty dla przechwytywanych hostów HTTPS.
+ * Certyfikat główny jest zapisywany w katalogu użytkownika (PKCS12 + PEM do instalacji na urządzeniu).
+ */
+public class CertificateAuthority {
+
+    private static final String KEYSTORE_FILE = "proxion-ca.p12";
+    private static final String PEM_FILE = "proxion-ca.pem";
+    private static final String ALIAS = "proxion-ca";
+    private static final char[] PASSWORD = "proxion".toCharArray();
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    private final X509Certificate caCertificate;
+    private final PrivateKey caPrivateKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private CertificateAuthority(X509Certificate caCertificate, PrivateKey caPrivateKey) {
+        this.caCertificate = caCertificate;
+        this.caPrivateKey = caPrivateKey;
+    }
+
+    public static CertificateAuthority loadOrCreate(Path directory) throws Exception {
+        Path keyStoreFile = directory.resolve(KEYSTORE_FILE);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+
+        if (Files.exists(keyStoreFile)) {
+            try (InputStream in = Files.newInputStream(keyStoreFile)) {
+                keyStore.load(in, PASSWORD);
+            }
+            X509Certificate certificate = (X509Certificate) keyStore.getCertificate(ALIAS);
+            PrivateKey privateKey = (PrivateKey) keyStore.getKey(ALIAS, PASSWORD);
+            System.out.println("🔑 Loaded Proxion root CA from " + keyStoreFile);
+            return new CertificateAuthority(certificate, privateKey);
+        }
+
+        System.out.println("🔑 Generating Proxion root CA...");
+        KeyPair keyPair = generateKeyPair();
+        X509Certificate certificate = createRootCertificate(keyPair);
+
+        Files.createDirectories(directory);
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), PASSWORD, new Certificate[]{certificate});
+        try (OutputStream out = Files.newOutputStream(keyStoreFile)) {
+            keyStore.store(out, PASSWORD);
+        }
+        Path pemFile = directory.resolve(PEM_FILE);
+        Files.write(pemFile, toPem(certificate).getBytes(StandardCharsets.US_ASCII));
+        System.out.println("✅ Root CA saved - install " + pemFile + " on your device to trust intercepted traffic");
+
+        return new CertificateAuthority(certificate, keyPair.getPrivate());
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate createRootCertificate(KeyPair keyPair) throws Exception {
+        X500Name name = new X500Name("CN=Proxion Root CA, O=Proxion");
+        long now = System.currentTimeMillis();
+
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                name,
+                BigInteger.valueOf(now),
+                new Date(now - TimeUnit.DAYS.toMillis(1)),
+                new Date(now + TimeUnit.DAYS.toMillis(3650)),
+                name,
+                keyPair.getPublic());
+
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+        builder.addExtension(Extension.subjectKeyIdentifier, false,
+                extensionUtils.createSubjectKeyIdentifier(keyPair.getPublic()));
+
+        ContentSigner signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(keyPair.getPrivate());
+        return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+    }
+
+    /**
+     * Wystawia certyfikat dla hosta (CN + subjectAltName) podpisany przez CA.
+     */
+    public X509Certificate issue(String host, KeyPair keyPair) throws Exception {
+        long now = System.currentTimeMillis();
+
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                X500Name.getInstance(caCertificate.getSubjectX500Principal().getEncoded()),
+                new BigInteger(64, random),
+                new Date(now - TimeUnit.DAYS.toMillis(1)),
+                new Date(now + TimeUnit.DAYS.toMillis(365)),
+                new X500Name("CN=" + host + ", O=Proxion"),
+                keyPair.getPublic());
+
+        boolean ipAddress = NetUtil.isValidIpV4Address(host) || NetUtil.isValidIpV6Address(host);
+        GeneralName altName = new GeneralName(ipAddress ? GeneralName.iPAddress : GeneralName.dNSName, host);
+
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(altName));
+        builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(KeyPurposeId.id_kp_serverAuth));
+        builder.addExtension(Extension.authorityKeyIdentifier, false,
+                extensionUtils.createAuthorityKeyIdentifier(caCertificate));
+
+        ContentSigner signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(caPrivateKey);
+        return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+    }
+
+    public X509Certificate getCaCertificate() {
+        return caCertificate;
+    }
+
+    private static String toPem(X509Certificate certificate) throws Exception {
+        Base64.Encoder encoder = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII));
+        return "-----BEGIN CERTIFICATE-----\n"
+                + encoder.encodeToString(certificate.getEncoded())
+                + "\n-----END CERTIFICATE-----\n";
+    }
+}
@@ -0,0 +1,131 @@
+package pl.proxion.proxy.ssl;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Konteksty TLS serwera dla przechwytywanych hostów. Certyfikaty są generowane poza event loopem
+ * (przez SniHandler z asynchronicznym mapowaniem), z gotowej puli par kluczy, i trzymane w cache LRU.
+ */
+public class MitmSslContexts {
+
+    private final CertificateAuthority certificateAuthority;
+    private final SslProvider provider;
+    private final Map<String, SslContext> cache;
+    private final Map<String, CompletableFuture<SslContext>> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<KeyPair> keyPairs;
+    private final ExecutorService generator;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+
+    public MitmSslContexts(CertificateAuthority certificateAuthority, SslProvider provider,
+                           int cacheSize, int keyPairPoolSize, int generatorThreads) {
+        this.certificateAuthority = certificateAuthority;
+        this.provider = provider;
+        this.cache = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SslContext> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.keyPairs = new ArrayBlockingQueue<>(Math.max(1, keyPairPoolSize));
+        this.generator = Executors.newFixedThreadPool(Math.max(1, generatorThreads), runnable -> {
+            Thread thread = new Thread(runnable, "proxion-mitm-certs");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Wątek w tle dopełnia pulę par kluczy (generowanie RSA to najdroższy krok)
+        Thread keyPairFiller = new Thread(this::fillKeyPairs, "proxion-mitm-keypairs");
+        keyPairFiller.setDaemon(true);
+        keyPairFiller.start();
+    }
+
+    /**
+     * Zwraca kontekst dla hosta - z cache albo po wygenerowaniu certyfikatu w tle.
+     */
+    public Future<SslContext> map(String host, Promise<SslContext> promise) {
+        SslContext cached = getCached(host);
+        if (cached != null) {
+            cacheHits.increment();
+            return promise.setSuccess(cached);
+        }
+
+        pending.computeIfAbsent(host, h -> CompletableFuture.supplyAsync(() -> createContext(h), generator))
+                .whenComplete((context, error) -> {
+                    pending.remove(host);
+                    if (error != null) {
+                        promise.tryFailure(error);
+                    } else {
+                        promise.trySuccess(context);
+                    }
+                });
+        return promise;
+    }
+
+    private SslContext getCached(String host) {
+        synchronized (cache) {
+            return cache.get(host);
+        }
+    }
+
+    private SslContext createContext(String host) {
+        try {
+            KeyPair keyPair = keyPairs.poll();
+            if (keyPair == null) {
+                keyPair = CertificateAuthority.generateKeyPair();
+            }
+            X509Certificate certificate = certificateAuthority.issue(host, keyPair);
+            SslContext context = SslContextBuilder
+                    .forServer(keyPair.getPrivate(), certificate, certificateAuthority.getCaCertificate())
+                    .sslProvider(provider)
+                    .build();
+
+            synchronized (cache) {
+                cache.put(host, context);
+            }
+            generated.increment();
+            System.out.println("📜 Generated certificate for " + host);
+            return context;
+        } catch (Exception e) {
+            System.err.println("❌ Error generating certificate for " + host + ": " + e.getMessage());
+            throw new IllegalStateException("Cannot create certificate for " + host, e);
+        }
+    }
+
+    private void fillKeyPairs() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                keyPairs.put(CertificateAuthority.generateKeyPair());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("❌ Key pair generator stopped: " + e.getMessage());
+        }
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    public long getGeneratedCount() {
+        return generated.sum();
+    }
+}
@@ -0,0 +1,127 @@
+package pl.proxion.proxy.ssl;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import pl.proxion.proxy.ProxyConfig;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wspólny kontekst TLS dla połączeń do serwerów docelowych, budowany raz na cały proces.
+ * Sesje TLS są cache'owane per host:port, więc kolejne połączenia do tego samego
+ * serwera wznawiają sesję zamiast robić pełny handshake.
+ */
+public class TlsClientContexts {
+
+    private final SslContext sslContext;
+    private final SslProvider provider;
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+    private final LongAdder handshakeNanos = new LongAdder();
+
+    public TlsClientContexts(ProxyConfig config) throws SSLException {
+        this.provider = selectProvider(config.getTlsProvider());
+        this.sslContext = SslContextBuilder.forClient()
+                .sslProvider(provider)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .sessionCacheSize(config.getTlsSessionCacheSize())
+                .sessionTimeout(config.getTlsSessionTimeoutSeconds())
+                .build();
+        System.out.println("🔐 TLS client context ready (provider: " + provider + ")");
+    }
+
+    private static SslProvider selectProvider(String requested) {
+        if ("jdk".equalsIgnoreCase(requested)) {
+            return SslProvider.JDK;
+        }
+        if (OpenSsl.isAvailable()) {
+            return SslProvider.OPENSSL;
+        }
+        if ("openssl".equalsIgnoreCase(requested)) {
+            System.err.println("⚠️ OpenSSL (netty-tcnative) not available, falling back to JDK SSL: "
+                    + OpenSsl.unavailabilityCause());
+        }
+        return SslProvider.JDK;
+    }
+
+    /**
+     * Dodaje do potoku handler TLS dla połączenia do host:port. Host i port trafiają do silnika SSL,
+     * więc cache sesji jest kluczowany po peerze (SNI + wznowienie sesji).
+     */
+    public void addHandler(Channel channel, String host, int port) {
+        SslHandler handler = sslContext.newHandler(channel.alloc(), host, port);
+        channel.pipeline().addLast(new HandshakeTimer(handler), handler);
+    }
+
+    /**
+     * Mierzy sam handshake: SslHandler zaczyna go w channelActive, więc start liczymy tuż przed nim,
+     * a nie przy tworzeniu handlera (czas łączenia TCP nie wlicza się do średniej).
+     */
+    private final class HandshakeTimer extends ChannelInboundHandlerAdapter {
+        private final SslHandler handler;
+
+        private HandshakeTimer(SslHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            long start = System.nanoTime();
+            long startMillis = System.currentTimeMillis();
+            handler.handshakeFuture().addListener(future -> {
+                if (future.isSuccess()) {
+                    handshakes.increment();
+                    handshakeNanos.add(System.nanoTime() - start);
+                    if (isResumed(handler.engine().getSession(), startMillis)) {
+                        resumedHandshakes.increment();
+                    }
+                } else {
+                    failedHandshakes.increment();
+                }
+            });
+            super.channelActive(ctx);
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    private static boolean isResumed(SSLSession session, long handshakeStartMillis) {
+        // Sesja utworzona przed rozpoczęciem handshake'u to sesja wznowiona z cache
+        return session.getCreationTime() < handshakeStartMillis;
+    }
+
+    public SslContext getSslContext() {
+        return sslContext;
+    }
+
+    public SslProvider getProvider() {
+        return provider;
+    }
+
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.sum();
+    }
+
+    public long getFailedHandshakeCount() {
+        return failedHandshakes.sum();
+    }
+
+    public double getAverageHandshakeMillis() {
+        long count = handshakes.sum();
+        return count == 0 ? 0 : handshakeNanos.sum() / (count * 1_000_000.0);
+    }
+}
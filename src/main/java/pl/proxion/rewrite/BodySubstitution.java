@@ -0,0 +1,14 @@
+package pl.proxion.rewrite;
+
+/**
+ * Jeden etap strumieniowej podmiany w body. Etap ma stan (niedokończone dopasowanie z poprzedniego
+ * kawałka), więc każda wiadomość dostaje własną instancję.
+ */
+interface BodySubstitution {
+
+    /**
+     * Przetwarza kolejny kawałek body i zwraca bajty gotowe do wysłania. Część wejścia, która może
+     * być początkiem dopasowania, zostaje wstrzymana do następnego kawałka; {@code last} ją opróżnia.
+     */
+    byte[] apply(byte[] chunk, boolean last);
+}
@@ -0,0 +1,153 @@
+package pl.proxion.rewrite;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Automat Aho-Corasick dla wszystkich wzorców endpointów naraz - jedno przejście po URL zaznacza
+ * w masce każdy wzorzec, który w nim występuje (dopasowanie podciągu, z rozróżnianiem wielkości liter,
+ * jak dotychczasowe {@code url.contains}). Przejścia są wyliczone z góry (DFA), więc skanowanie to
+ * jedno odczytanie tablicy na znak. Niezmienny po zbudowaniu - bezpieczny dla wielu wątków.
+ */
+final class EndpointMatcher {
+
+    private final char[] asciiIndex = new char[128];
+    private final char[] otherChars;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final int patternCount;
+
+    EndpointMatcher(List<String> patterns) {
+        this.patternCount = patterns.size();
+
+        // Alfabet: tylko znaki występujące we wzorcach, indeks 0 to "każdy inny znak"
+        StringBuilder other = new StringBuilder();
+        int size = 1;
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c < 128) {
+                    if (asciiIndex[c] == 0) {
+                        asciiIndex[c] = (char) size++;
+                    }
+                } else if (other.indexOf(String.valueOf(c)) < 0) {
+                    other.append(c);
+                }
+            }
+        }
+        char[] sortedOther = other.toString().toCharArray();
+        Arrays.sort(sortedOther);
+        this.otherChars = sortedOther;
+        this.alphabetSize = size + sortedOther.length;
+
+        // Trie
+        List<int[]> children = new ArrayList<>();
+        List<List<Integer>> ownOutputs = new ArrayList<>();
+        children.add(newRow());
+        ownOutputs.add(new ArrayList<>());
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int symbol = symbol(pattern.charAt(i));
+                int next = children.get(state)[symbol];
+                if (next == 0) {
+                    next = children.size();
+                    children.get(state)[symbol] = next;
+                    children.add(newRow());
+                    ownOutputs.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            ownOutputs.get(state).add(id);
+        }
+
+        // Linki porażki i przejścia DFA - przechodzimy trie wszerz
+        int states = children.size();
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new int[states][];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputs[0] = toArray(ownOutputs.get(0));
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int child = children.get(0)[symbol];
+            if (child != 0) {
+                fail[child] = 0;
+                transitions[symbol] = child;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(ownOutputs.get(state), outputs[fail[state]]);
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int child = children.get(state)[symbol];
+                int fallback = transitions[fail[state] * alphabetSize + symbol];
+                if (child != 0) {
+                    fail[child] = fallback;
+                    transitions[state * alphabetSize + symbol] = child;
+                    queue.add(child);
+                } else {
+                    transitions[state * alphabetSize + symbol] = fallback;
+                }
+            }
+        }
+    }
+
+    private int[] newRow() {
+        return new int[alphabetSize];
+    }
+
+    int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Liczba słów long potrzebnych na maskę wyników {@link #scan}.
+     */
+    int maskWords() {
+        return (patternCount + 63) >>> 6;
+    }
+
+    /**
+     * Zaznacza w {@code mask} (wyczyszczonej przez wołającego) wzorce występujące w tekście. Nie alokuje.
+     */
+    void scan(CharSequence text, long[] mask) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + symbol(text.charAt(i))];
+            int[] matched = outputs[state];
+            for (int id : matched) {
+                mask[id >>> 6] |= 1L << id;
+            }
+        }
+    }
+
+    private int symbol(char c) {
+        if (c < 128) {
+            return asciiIndex[c];
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? alphabetSize - otherChars.length + index : 0;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static int[] merge(List<Integer> own, int[] inherited) {
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        int[] merged = Arrays.copyOf(toArray(own), own.size() + inherited.length);
+        System.arraycopy(inherited, 0, merged, own.size(), inherited.length);
+        return merged;
+    }
+}
@@ -0,0 +1,79 @@
+package pl.proxion.rewrite;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram czasu oceny reguł rewrite dla jednej odpowiedzi, w przedziałach potęg dwójki (ns).
+ * Zapis to jeden LongAdder - bez blokad i bez alokacji, więc można go wołać z każdego wątku Netty.
+ * Percentyle są przybliżone górną granicą przedziału.
+ */
+public final class EvaluationHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public EvaluationHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        // Przedział i obejmuje [2^i, 2^(i+1)); zero trafia do przedziału 0
+        buckets[63 - Long.numberOfLeadingZeros(value | 1)].increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Górna granica przedziału, w którym leży percentyl {@code percentile} (0-100), w nanosekundach.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(i >= 62 ? Long.MAX_VALUE : (2L << i) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public String summary() {
+        return String.format("Rule evaluation: %d responses · mean %.1f µs · p50 ≤ %.1f µs · p99 ≤ %.1f µs · max %.1f µs",
+                getCount(), getMeanNanos() / 1000.0, getPercentileNanos(50) / 1000.0,
+                getPercentileNanos(99) / 1000.0, getMaxNanos() / 1000.0);
+    }
+}
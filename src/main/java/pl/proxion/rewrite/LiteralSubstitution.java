@@ -0,0 +1,87 @@
+package pl.proxion.rewrite;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Podmiana dosłownego ciągu bajtów, strumieniowo (KMP). Wstrzymane bajty to zawsze prefiks wzorca,
+ * więc stan między kawałkami to jedna liczba - dopasowanie przechodzące przez granicę kawałków
+ * nie wymaga żadnego bufora.
+ */
+final class LiteralSubstitution implements BodySubstitution {
+
+    private final byte[] pattern;
+    private final byte[] replacement;
+    private final int[] failure;
+    private int matched;
+
+    LiteralSubstitution(byte[] pattern, byte[] replacement, int[] failure) {
+        this.pattern = pattern;
+        this.replacement = replacement;
+        this.failure = failure;
+    }
+
+    /**
+     * Tablica przejść KMP - liczona raz, przy kompilacji reguły.
+     */
+    static int[] failure(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+    @Override
+    public byte[] apply(byte[] chunk, boolean last) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.length + replacement.length);
+        byte first = pattern[0];
+        int i = 0;
+        while (i < chunk.length) {
+            if (matched == 0) {
+                // Poza dopasowaniem kopiujemy hurtem aż do kolejnego wystąpienia pierwszego bajtu wzorca
+                int next = indexOf(chunk, first, i);
+                out.write(chunk, i, next - i);
+                if (next == chunk.length) {
+                    break;
+                }
+                i = next;
+            }
+            byte b = chunk[i++];
+            while (matched > 0 && pattern[matched] != b) {
+                // Wstrzymane bajty, które nie mogą już być początkiem dopasowania, idą dalej
+                int shorter = failure[matched - 1];
+                out.write(pattern, 0, matched - shorter);
+                matched = shorter;
+            }
+            if (pattern[matched] == b) {
+                if (++matched == pattern.length) {
+                    out.write(replacement, 0, replacement.length);
+                    matched = 0;
+                }
+            } else {
+                out.write(b);
+            }
+        }
+        if (last && matched > 0) {
+            out.write(pattern, 0, matched);
+            matched = 0;
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return data.length;
+    }
+}
@@ -0,0 +1,126 @@
+package pl.proxion.rewrite;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import pl.proxion.model.EndpointPattern;
+import pl.proxion.model.RewriteAction;
+import pl.proxion.model.RewriteRule;
+import pl.proxion.model.RuleStats;
+import pl.proxion.model.UrlParts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Skompilowana reguła nagłówka lub body. Wzorce i tablice KMP są gotowe po kompilacji migawki,
+ * a na ścieżce wiadomości powstaje tylko stan strumieniowej podmiany.
+ */
+final class MessageRewrite {
+
+    private final RewriteAction action;
+    private final RuleStats stats;
+    private final EndpointPattern endpoint;
+    private final int status; // -1 = dowolny
+    private final int statusClass; // -1 = dowolna
+    private final String headerName;
+    private final String matchText;
+    private final String replacement;
+    private final Pattern valuePattern; // regex dla nagłówka albo body (body: wzorzec na bajtach ISO-8859-1)
+    private final byte[] literal;
+    private final byte[] literalReplacement;
+    private final int[] failure;
+    private final int regexWindow;
+
+    MessageRewrite(RewriteRule rule, EndpointPattern endpoint, int status, int statusClass, int regexWindow) {
+        this.action = rule.getAction();
+        this.stats = rule.stats();
+        this.endpoint = endpoint;
+        this.status = status;
+        this.statusClass = statusClass;
+        this.headerName = rule.getHeaderName() != null ? rule.getHeaderName().trim() : "";
+        this.matchText = rule.getMatchText() != null ? rule.getMatchText() : "";
+        this.replacement = rule.getReplacement() != null ? rule.getReplacement() : "";
+        this.regexWindow = regexWindow;
+
+        if (action == RewriteAction.REPLACE_BODY) {
+            if (rule.isRegex()) {
+                // Znaki spoza ASCII we wzorcu i zamienniku zamieniamy na ich bajty UTF-8 widziane jako ISO-8859-1
+                valuePattern = Pattern.compile(latin1View(matchText));
+                literal = null;
+                literalReplacement = null;
+                failure = null;
+            } else {
+                valuePattern = null;
+                literal = matchText.getBytes(StandardCharsets.UTF_8);
+                literalReplacement = replacement.getBytes(StandardCharsets.UTF_8);
+                failure = LiteralSubstitution.failure(literal);
+            }
+        } else {
+            valuePattern = rule.isRegex() && !matchText.isEmpty() ? Pattern.compile(matchText) : null;
+            literal = null;
+            literalReplacement = null;
+            failure = null;
+        }
+    }
+
+    boolean matchesStatus(int statusCode) {
+        return (status < 0 || status == statusCode) && (statusClass < 0 || statusClass == statusCode / 100);
+    }
+
+    boolean matchesEndpoint(String url, UrlParts parts) {
+        return endpoint.isMatchAll() || (url != null && endpoint.matches(url, parts));
+    }
+
+    RuleStats getStats() {
+        return stats;
+    }
+
+    boolean isBodyRewrite() {
+        return action == RewriteAction.REPLACE_BODY;
+    }
+
+    void applyHeaders(HttpHeaders headers) {
+        switch (action) {
+            case ADD_HEADER:
+                headers.add(headerName, replacement);
+                break;
+            case REMOVE_HEADER:
+                headers.remove(headerName);
+                break;
+            case REPLACE_HEADER:
+                List<String> values = headers.getAll(headerName);
+                if (values.isEmpty()) {
+                    return;
+                }
+                headers.remove(headerName);
+                for (String value : values) {
+                    headers.add(headerName, replaceValue(value));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String replaceValue(String value) {
+        if (matchText.isEmpty()) {
+            return replacement;
+        }
+        if (valuePattern != null) {
+            return valuePattern.matcher(value).replaceAll(replacement);
+        }
+        return value.replace(matchText, replacement);
+    }
+
+    BodySubstitution newSubstitution() {
+        if (valuePattern != null) {
+            return new RegexSubstitution(valuePattern, latin1View(replacement), regexWindow);
+        }
+        return new LiteralSubstitution(literal, literalReplacement, failure);
+    }
+
+    private static String latin1View(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,82 @@
+package pl.proxion.rewrite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Podmiana wg wyrażenia regularnego, strumieniowo. Bajty body oglądamy jako ISO-8859-1 (bajt = znak),
+ * więc podmiana nie zależy od kodowania body i nie psuje bajtów poza dopasowaniem. Wstrzymujemy tylko
+ * końcówkę, od której dopasowanie faktycznie może ciągnąć się w następnym kawałku - najwyżej
+ * {@code window} bajtów, żeby pamięć nie rosła z rozmiarem body. Dłuższe dopasowania są ucinane na
+ * granicy okna. Kilka już wysłanych znaków zostaje jako kontekst, żeby {@code \b} i lookbehind
+ * widziały poprzedni kawałek, a {@code ^} i {@code \A} pasowały tylko na początku body.
+ */
+final class RegexSubstitution implements BodySubstitution {
+
+    // Kontekst przed wstrzymaną końcówką - wystarcza dla \b i typowych lookbehind
+    private static final int CONTEXT_CHARS = 64;
+
+    private final Pattern pattern;
+    private final String replacement;
+    private final int window;
+    // Wysłane już znaki tuż przed carry; pusty tylko na początku body
+    private String context = "";
+    private String carry = "";
+
+    RegexSubstitution(Pattern pattern, String replacement, int window) {
+        this.pattern = pattern;
+        this.replacement = replacement;
+        this.window = window;
+    }
+
+    @Override
+    public byte[] apply(byte[] chunk, boolean last) {
+        String text = context + carry + new String(chunk, StandardCharsets.ISO_8859_1);
+        int start = context.length();
+        Matcher matcher = pattern.matcher(text);
+        // Kontekst jest widoczny dla lookbehind, ale granica regionu nie udaje początku wejścia
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(start, text.length());
+
+        // appendReplacement dopisuje od początku tekstu - kontekst odcinamy przy zwracaniu
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        int appended = 0;
+        int keepFrom = text.length();
+        boolean matchHeld = false;
+        while (matcher.find()) {
+            if (!last && (matcher.hitEnd() || matcher.requireEnd())
+                    && text.length() - matcher.start() <= window) {
+                // Dopasowanie może się zmienić z kolejnym kawałkiem - czekamy na niego
+                keepFrom = matcher.start();
+                matchHeld = true;
+                break;
+            }
+            matcher.appendReplacement(out, replacement);
+            appended = matcher.end();
+        }
+        if (!matchHeld && !last && matcher.hitEnd()) {
+            keepFrom = partialMatchStart(matcher, Math.max(appended, start), text.length());
+        }
+        out.append(text, appended, keepFrom);
+
+        context = text.substring(Math.max(0, keepFrom - CONTEXT_CHARS), keepFrom);
+        carry = text.substring(keepFrom);
+        return out.substring(start).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Najwcześniejsza pozycja w oknie końcówki, od której częściowe dopasowanie dochodzi do końca tekstu;
+     * {@code end}, gdy takiej nie ma.
+     */
+    private int partialMatchStart(Matcher matcher, int from, int end) {
+        for (int i = Math.max(from, end - window); i < end; i++) {
+            matcher.region(i, end);
+            if (!matcher.lookingAt() && matcher.hitEnd()) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
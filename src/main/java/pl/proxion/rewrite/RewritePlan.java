@@ -0,0 +1,110 @@
+package pl.proxion.rewrite;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import pl.proxion.capture.ContentDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reguły nagłówków i body, które pasują do jednej wiadomości (żądania albo odpowiedzi).
+ * Nagłówki zmieniamy od razu; body - strumieniowo, przez {@link StreamingBodyRewriter}, a ramkowanie
+ * wiadomości (Content-Length / chunked) jest dopasowywane, zanim nagłówek trafi dalej.
+ */
+public final class RewritePlan {
+
+    private final List<MessageRewrite> headerRewrites;
+    private final List<MessageRewrite> bodyRewrites;
+    private final boolean stripAcceptEncoding;
+
+    RewritePlan(List<MessageRewrite> headerRewrites, List<MessageRewrite> bodyRewrites, boolean stripAcceptEncoding) {
+        this.headerRewrites = headerRewrites;
+        this.bodyRewrites = bodyRewrites;
+        this.stripAcceptEncoding = stripAcceptEncoding;
+    }
+
+    public void applyHeaders(HttpMessage message) {
+        for (MessageRewrite rewrite : headerRewrites) {
+            rewrite.applyHeaders(message.headers());
+        }
+        if (stripAcceptEncoding) {
+            // Odpowiedź ma reguły body - prosimy serwer o body bez kompresji, żeby dało się je podmienić
+            message.headers().remove(HttpHeaderNames.ACCEPT_ENCODING);
+        }
+    }
+
+    public boolean hasBodyRewrite() {
+        return !bodyRewrites.isEmpty();
+    }
+
+    /**
+     * Przygotowuje wiadomość do podmiany body. Pełna wiadomość (po agregacji) jest przepisywana od razu
+     * i dostaje nowy Content-Length - wtedy wynik to {@code null}. Dla wiadomości strumieniowej zdejmujemy
+     * Content-Length: HTTP/1.1 przechodzi na chunked, a odpowiedź HTTP/1.0 kończy się zamknięciem połączenia.
+     * Zwraca {@code null}, gdy body nie da się przepisać (np. jest skompresowane).
+     */
+    public StreamingBodyRewriter prepareBody(HttpMessage message) {
+        if (bodyRewrites.isEmpty()) {
+            return null;
+        }
+        String contentEncoding = message.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+        if (ContentDecoder.isEncoded(contentEncoding)) {
+            System.err.println("⚠️ Skipping body rewrite - body is encoded (" + contentEncoding + ")");
+            return null;
+        }
+
+        if (message instanceof FullHttpMessage) {
+            rewriteFull((FullHttpMessage) message);
+            return null;
+        }
+
+        boolean chunked = HttpUtil.isTransferEncodingChunked(message);
+        if (!chunked && HttpUtil.isContentLengthSet(message)) {
+            if (HttpUtil.getContentLength(message, 0L) == 0L) {
+                return null;
+            }
+            if (message.protocolVersion().equals(HttpVersion.HTTP_1_0)) {
+                if (message instanceof HttpRequest) {
+                    // Żądanie HTTP/1.0 musi mieć Content-Length - nie znamy go przed końcem body
+                    return null;
+                }
+                message.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
+                HttpUtil.setKeepAlive(message, false);
+            } else {
+                HttpUtil.setTransferEncodingChunked(message, true);
+            }
+        } else if (!chunked && message instanceof HttpRequest) {
+            // Żądanie bez Content-Length i bez chunked nie ma body
+            return null;
+        }
+        // Odpowiedź bez Content-Length i bez chunked kończy się zamknięciem połączenia - ramkowanie bez zmian
+        return newBodyRewriter();
+    }
+
+    private StreamingBodyRewriter newBodyRewriter() {
+        List<BodySubstitution> stages = new ArrayList<>(bodyRewrites.size());
+        for (MessageRewrite rewrite : bodyRewrites) {
+            stages.add(rewrite.newSubstitution());
+        }
+        return new StreamingBodyRewriter(stages);
+    }
+
+    private void rewriteFull(FullHttpMessage message) {
+        StreamingBodyRewriter rewriter = newBodyRewriter();
+        ByteBuf rewritten = rewriter.rewrite(message.content(), true);
+        try {
+            message.content().clear().writeBytes(rewritten);
+        } finally {
+            rewritten.release();
+        }
+        if (!HttpUtil.isTransferEncodingChunked(message)) {
+            HttpUtil.setContentLength(message, message.content().readableBytes());
+        }
+    }
+}
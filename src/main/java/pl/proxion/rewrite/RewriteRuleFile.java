@@ -0,0 +1,268 @@
+package pl.proxion.rewrite;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import pl.proxion.capture.ContentHash;
+import pl.proxion.model.EndpointPatternType;
+import pl.proxion.model.RewriteAction;
+import pl.proxion.model.RewriteRule;
+import pl.proxion.model.RewriteTarget;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Plik JSON z regułami rewrite. Zapis i odczyt odbywają się na własnych wątkach - ani wątki Netty,
+ * ani wątek UI nie czekają na dysk czy parsowanie. Zmiany pliku z zewnątrz (edytor, git pull)
+ * wykrywa {@link WatchService}; wczytane reguły trafiają do {@code onReload}, również poza wątkiem UI.
+ */
+public final class RewriteRuleFile implements Closeable {
+
+    private static final int FORMAT_VERSION = 1;
+    // Edytory zapisują plik kilkoma zdarzeniami - wczytujemy dopiero, gdy ucichną
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final Path file;
+    private final Consumer<List<RewriteRule>> onReload;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private final CollectionType ruleListType;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "proxion-rules-save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Kolejne zmiany w trakcie zapisu łączymy - zapisujemy tylko najnowszy stan
+    private final AtomicReference<List<RuleFields>> pendingSave = new AtomicReference<>();
+    // Skrót ostatnio zapisanej treści - zdarzenie z własnego zapisu nie wczytuje reguł ponownie
+    private volatile long lastWrittenHash;
+    private WatchService watchService;
+
+    public RewriteRuleFile(Path file, Consumer<List<RewriteRule>> onReload) {
+        this.file = file.toAbsolutePath();
+        this.onReload = onReload;
+        // Brakujące pole albo null w pliku zostawia wartość domyślną reguły
+        mapper.setDefaultSetterInfo(JsonSetter.Value.forValueNulls(Nulls.SKIP));
+        this.ruleListType = mapper.getTypeFactory().constructCollectionType(List.class, RewriteRule.class);
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(file);
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    /**
+     * Wczytuje plik w tle, a potem (jeśli {@code watch}) obserwuje katalog i wczytuje go po każdej zmianie.
+     */
+    public void start(boolean watch) throws IOException {
+        Files.createDirectories(file.getParent());
+        if (watch) {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        Thread thread = new Thread(this::run, "proxion-rules-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        if (exists()) {
+            reload();
+        }
+        if (watchService == null) {
+            return;
+        }
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = isRuleFileEvent(key);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Zamknięcie aplikacji
+        }
+    }
+
+    private boolean isRuleFileEvent(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void reload() {
+        if (!exists()) {
+            // Usunięty plik nie czyści reguł - zostają te z pamięci i wrócą przy następnym zapisie
+            return;
+        }
+        try {
+            byte[] content = Files.readAllBytes(file);
+            if (ContentHash.hash64(content) == lastWrittenHash) {
+                return;
+            }
+            List<RewriteRule> rules = parse(content);
+            System.out.println("📂 Loaded " + rules.size() + " rewrite rules from " + file);
+            onReload.accept(rules);
+        } catch (JsonProcessingException e) {
+            // Plik w połowie edycji albo z błędem składni - działają dotychczasowe reguły
+            System.err.println("❌ Invalid rewrite rules file " + file + ": " + e.getOriginalMessage());
+        } catch (IOException e) {
+            System.err.println("❌ Cannot read rewrite rules file " + file + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Błąd przy wczytywaniu nie może zatrzymać obserwatora - kolejna zmiana pliku spróbuje ponownie
+            System.err.println("❌ Cannot apply rewrite rules from " + file + ": " + e);
+            e.printStackTrace();
+        }
+    }
+
+    // Format: {"version": 1, "rules": [...]}; sama tablica reguł też jest akceptowana
+    private List<RewriteRule> parse(byte[] content) throws IOException {
+        JsonNode root = mapper.readTree(content);
+        JsonNode rules = root != null && root.isArray() ? root : root != null ? root.get("rules") : null;
+        if (rules == null || rules.isNull()) {
+            return new ArrayList<>();
+        }
+        if (!rules.isArray()) {
+            throw new IOException("\"rules\" is not an array");
+        }
+        List<RewriteRule> parsed = mapper.readerFor(ruleListType).readValue(rules);
+        parsed.removeIf(rule -> rule == null);
+        return parsed;
+    }
+
+    /**
+     * Zapisuje reguły w tle. Obiekty reguł należą do wątku wołającego (UI), więc kopiujemy od razu same
+     * pola - wątek zapisu nie czyta reguł, które UI może w tym czasie zmieniać, a serializacja do JSON
+     * (przy 10k reguł najdroższa część) odbywa się już na nim. Plik jest podmieniany atomowo
+     * (plik tymczasowy + move), więc obserwator i inne procesy nigdy nie widzą połowy zapisu.
+     */
+    public void save(List<RewriteRule> rules) {
+        List<RuleFields> snapshot = new ArrayList<>(rules.size());
+        for (RewriteRule rule : rules) {
+            snapshot.add(new RuleFields(rule));
+        }
+        if (pendingSave.getAndSet(snapshot) == null) {
+            saveExecutor.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        List<RuleFields> rules = pendingSave.getAndSet(null);
+        if (rules == null) {
+            return;
+        }
+        RuleDocument document = new RuleDocument();
+        document.rules = rules;
+        try {
+            byte[] content = mapper.writeValueAsBytes(document);
+            lastWrittenHash = ContentHash.hash64(content);
+
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, content);
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Cannot save rewrite rules to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        saveExecutor.shutdown();
+        try {
+            // Ostatni zapis przed zamknięciem aplikacji
+            saveExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot close rewrite rules watcher: " + e.getMessage());
+        }
+    }
+
+    private static final class RuleDocument {
+        public int version = FORMAT_VERSION;
+        public List<RuleFields> rules;
+    }
+
+    // Kopia zapisywanych pól reguły, w kolejności pól RewriteRule - plik wygląda tak samo jak z samych reguł
+    private static final class RuleFields {
+        public final String originalStatusCode;
+        public final String newStatusCode;
+        public final String endpointPattern;
+        public final boolean enabled;
+        public final String description;
+        public final EndpointPatternType patternType;
+        public final String hostPattern;
+        public final RewriteAction action;
+        public final RewriteTarget target;
+        public final String headerName;
+        public final String matchText;
+        public final String replacement;
+        public final boolean regex;
+
+        private RuleFields(RewriteRule rule) {
+            this.originalStatusCode = rule.getOriginalStatusCode();
+            this.newStatusCode = rule.getNewStatusCode();
+            this.endpointPattern = rule.getEndpointPattern();
+            this.enabled = rule.isEnabled();
+            this.description = rule.getDescription();
+            this.patternType = rule.getPatternType();
+            this.hostPattern = rule.getHostPattern();
+            this.action = rule.getAction();
+            this.target = rule.getTarget();
+            this.headerName = rule.getHeaderName();
+            this.matchText = rule.getMatchText();
+            this.replacement = rule.getReplacement();
+            this.regex = rule.isRegex();
+        }
+    }
+}
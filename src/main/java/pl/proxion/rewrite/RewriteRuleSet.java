@@ -0,0 +1,394 @@
+package pl.proxion.rewrite;
+
+import pl.proxion.model.EndpointPattern;
+import pl.proxion.model.RewriteAction;
+import pl.proxion.model.RewriteRule;
+import pl.proxion.model.RewriteTarget;
+import pl.proxion.model.RuleStats;
+import pl.proxion.model.UrlParts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Skompilowana, niezmienna migawka reguł rewrite, czytana z wątków Netty bez blokad.
+ * Reguły są zindeksowane po kodzie statusu: najpierw reguły z dokładnym kodem, potem z klasą
+ * {@code Nxx} - w obu grupach w kolejności z tabeli. Kody docelowe są sparsowane przy kompilacji,
+ * a wzorce "contains" sprawdza jeden automat {@link EndpointMatcher} - takie wyszukiwanie nie alokuje.
+ * Wzorce glob/regex (skompilowane przy zapisie reguły) oceniamy raz na URL, a wynik trafia do cache LRU.
+ * Reguły nagłówków i body trzymamy osobno, dla żądań i odpowiedzi - z nich powstaje {@link RewritePlan}.
+ */
+public final class RewriteRuleSet {
+
+    public static final RewriteRuleSet EMPTY = compile(List.of());
+
+    public static final int NO_MATCH = -1;
+
+    private static final int MAX_STATUS = 999;
+    private static final int URL_CACHE_SIZE = 4096;
+    private static final int[] NONE = new int[0];
+    // Najdłuższe dopasowanie regex w body, na które czekamy między kawałkami
+    private static final int REGEX_WINDOW_BYTES = 64 * 1024;
+
+    private final RewriteRule[] rules;
+    private final RuleStats[] stats;
+    private final int[] targetStatus;
+    private final int[] endpointIds; // -1 = brak wzorca ścieżki "contains"
+    private final String[] hostTexts; // null = brak wzorca hosta "contains"
+    private final int[] patternIds; // -1 = brak wzorca glob/regex
+    private final EndpointPattern[] patterns;
+    private final UrlMatchCache urlMatches = new UrlMatchCache(URL_CACHE_SIZE);
+    private final int[][] byExactStatus = new int[MAX_STATUS + 1][];
+    private final int[][] byStatusClass = new int[10][];
+    private final EndpointMatcher endpoints;
+    private final ThreadLocal<long[]> masks;
+    private final MessageRewrite[] requestRewrites;
+    private final MessageRewrite[] responseRewrites;
+    private final boolean responseBodyRewrites;
+
+    private RewriteRuleSet(List<RewriteRule> rules, List<Integer> targets, List<Integer> endpointIds,
+                           List<String> hostTexts, List<Integer> patternIds, List<EndpointPattern> patterns,
+                           Map<Integer, List<Integer>> exact, Map<Integer, List<Integer>> classes,
+                           List<String> containsPatterns, List<MessageRewrite> requestRewrites,
+                           List<MessageRewrite> responseRewrites) {
+        this.rules = rules.toArray(new RewriteRule[0]);
+        this.stats = new RuleStats[this.rules.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = this.rules[i].stats();
+        }
+        this.targetStatus = toArray(targets);
+        this.endpointIds = toArray(endpointIds);
+        this.hostTexts = hostTexts.toArray(new String[0]);
+        this.patternIds = toArray(patternIds);
+        this.patterns = patterns.toArray(new EndpointPattern[0]);
+        for (int code = 0; code <= MAX_STATUS; code++) {
+            List<Integer> indexes = exact.get(code);
+            byExactStatus[code] = indexes != null ? toArray(indexes) : NONE;
+        }
+        for (int statusClass = 0; statusClass < 10; statusClass++) {
+            List<Integer> indexes = classes.get(statusClass);
+            byStatusClass[statusClass] = indexes != null ? toArray(indexes) : NONE;
+        }
+        this.endpoints = new EndpointMatcher(containsPatterns);
+        int words = endpoints.maskWords();
+        this.masks = ThreadLocal.withInitial(() -> new long[words]);
+        this.requestRewrites = requestRewrites.toArray(new MessageRewrite[0]);
+        this.responseRewrites = responseRewrites.toArray(new MessageRewrite[0]);
+        this.responseBodyRewrites = responseRewrites.stream().anyMatch(MessageRewrite::isBodyRewrite);
+    }
+
+    /**
+     * Kompiluje włączone reguły. Reguły z błędnym kodem są pomijane (z ostrzeżeniem) - raz, tutaj,
+     * a nie przy każdej odpowiedzi.
+     */
+    public static RewriteRuleSet compile(List<RewriteRule> source) {
+        List<RewriteRule> rules = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+        List<Integer> endpointIds = new ArrayList<>();
+        List<String> hostTexts = new ArrayList<>();
+        List<Integer> patternIds = new ArrayList<>();
+        List<EndpointPattern> patterns = new ArrayList<>();
+        Map<Integer, List<Integer>> exact = new HashMap<>();
+        Map<Integer, List<Integer>> classes = new HashMap<>();
+        List<String> containsPatterns = new ArrayList<>();
+        Map<String, Integer> containsIds = new HashMap<>();
+        List<MessageRewrite> requestRewrites = new ArrayList<>();
+        List<MessageRewrite> responseRewrites = new ArrayList<>();
+
+        for (RewriteRule rule : source) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            if (!rule.isStatusRule()) {
+                MessageRewrite rewrite = compileMessageRewrite(rule);
+                if (rewrite != null) {
+                    (rule.getTarget() == RewriteTarget.REQUEST ? requestRewrites : responseRewrites).add(rewrite);
+                }
+                continue;
+            }
+            int target = parseStatus(rule.getNewStatusCode());
+            String original = rule.getOriginalStatusCode() != null ? rule.getOriginalStatusCode().trim() : "";
+            int statusClass = parseStatusClass(original);
+            int status = statusClass < 0 ? parseStatus(original) : -1;
+            if (target < 0 || (statusClass < 0 && status < 0)) {
+                System.err.println("❌ Skipping rewrite rule with invalid status code: "
+                        + rule.getOriginalStatusCode() + " → " + rule.getNewStatusCode());
+                continue;
+            }
+            EndpointPattern endpoint;
+            try {
+                // Zwykle już skompilowany przy zapisie reguły
+                endpoint = rule.compiledEndpoint();
+            } catch (PatternSyntaxException e) {
+                System.err.println("❌ Skipping rewrite rule with invalid endpoint pattern: " + e.getMessage());
+                continue;
+            }
+
+            int index = rules.size();
+            rules.add(rule);
+            targets.add(target);
+            if (endpoint.isContains()) {
+                String path = endpoint.getPathText();
+                endpointIds.add(path.isEmpty() ? -1 : containsIds.computeIfAbsent(path, key -> {
+                    containsPatterns.add(key);
+                    return containsPatterns.size() - 1;
+                }));
+                hostTexts.add(endpoint.getHostText().isEmpty() ? null : endpoint.getHostText());
+                patternIds.add(-1);
+            } else {
+                endpointIds.add(-1);
+                hostTexts.add(null);
+                patternIds.add(endpoint.isMatchAll() ? -1 : patterns.size());
+                if (!endpoint.isMatchAll()) {
+                    patterns.add(endpoint);
+                }
+            }
+            if (statusClass >= 0) {
+                classes.computeIfAbsent(statusClass, key -> new ArrayList<>()).add(index);
+            } else {
+                exact.computeIfAbsent(status, key -> new ArrayList<>()).add(index);
+            }
+        }
+        return new RewriteRuleSet(rules, targets, endpointIds, hostTexts, patternIds, patterns, exact, classes,
+                containsPatterns, requestRewrites, responseRewrites);
+    }
+
+    private static MessageRewrite compileMessageRewrite(RewriteRule rule) {
+        // Filtr statusu dotyczy tylko odpowiedzi
+        String filter = rule.getTarget() == RewriteTarget.RESPONSE && rule.getOriginalStatusCode() != null
+                ? rule.getOriginalStatusCode().trim() : "";
+        int statusClass = parseStatusClass(filter);
+        int status = statusClass < 0 && !filter.isEmpty() ? parseStatus(filter) : -1;
+        if (!filter.isEmpty() && statusClass < 0 && status < 0) {
+            System.err.println("❌ Skipping rewrite rule with invalid status filter: " + filter);
+            return null;
+        }
+        boolean header = rule.getAction() != RewriteAction.REPLACE_BODY;
+        if (header ? rule.getHeaderName() == null || rule.getHeaderName().isBlank()
+                : rule.getMatchText() == null || rule.getMatchText().isEmpty()) {
+            System.err.println("❌ Skipping " + rule.getAction() + " rewrite rule without "
+                    + (header ? "header name" : "text to replace"));
+            return null;
+        }
+        try {
+            return new MessageRewrite(rule, rule.compiledEndpoint(), status, statusClass, REGEX_WINDOW_BYTES);
+        } catch (PatternSyntaxException e) {
+            System.err.println("❌ Skipping rewrite rule with invalid pattern: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Zwraca indeks pierwszej pasującej reguły albo {@link #NO_MATCH}. Sprawdzone po drodze reguły
+     * (z pasującym statusem) dostają chybienie, a zwrócona - trafienie.
+     */
+    public int match(int statusCode, String url) {
+        if (statusCode < 0 || statusCode > MAX_STATUS) {
+            return NO_MATCH;
+        }
+        int[] exact = byExactStatus[statusCode];
+        int[] statusClass = byStatusClass[statusCode / 100];
+        if (exact.length == 0 && statusClass.length == 0) {
+            return NO_MATCH;
+        }
+
+        long[] mask = null;
+        if (endpoints.getPatternCount() > 0 && url != null && needsEndpoints(exact, statusClass)) {
+            // URL skanujemy raz, tylko gdy któraś z kandydujących reguł ma wzorzec endpointu
+            mask = masks.get();
+            Arrays.fill(mask, 0L);
+            endpoints.scan(url, mask);
+        }
+        int match = firstMatch(exact, url, mask);
+        return match != NO_MATCH ? match : firstMatch(statusClass, url, mask);
+    }
+
+    /**
+     * Reguły nagłówków i body dla żądania; {@code null}, gdy żadna nie pasuje. Jeśli do URL pasuje
+     * reguła body odpowiedzi, plan zdejmuje też Accept-Encoding - skompresowanego body nie przepisujemy.
+     */
+    public RewritePlan planRequest(String url) {
+        if (requestRewrites.length == 0 && !responseBodyRewrites) {
+            return null;
+        }
+        UrlParts parts = url != null ? UrlParts.parse(url) : null;
+        boolean stripAcceptEncoding = false;
+        if (responseBodyRewrites) {
+            for (MessageRewrite rewrite : responseRewrites) {
+                // Status odpowiedzi nie jest jeszcze znany - liczy się tylko endpoint
+                if (rewrite.isBodyRewrite() && rewrite.matchesEndpoint(url, parts)) {
+                    stripAcceptEncoding = true;
+                    break;
+                }
+            }
+        }
+        return plan(requestRewrites, -1, url, parts, stripAcceptEncoding);
+    }
+
+    /**
+     * Reguły nagłówków i body dla odpowiedzi o danym (oryginalnym) statusie; {@code null}, gdy żadna nie pasuje.
+     */
+    public RewritePlan planResponse(int statusCode, String url) {
+        if (responseRewrites.length == 0) {
+            return null;
+        }
+        return plan(responseRewrites, statusCode, url, url != null ? UrlParts.parse(url) : null, false);
+    }
+
+    private static RewritePlan plan(MessageRewrite[] candidates, int statusCode, String url, UrlParts parts,
+                                    boolean stripAcceptEncoding) {
+        List<MessageRewrite> headers = null;
+        List<MessageRewrite> bodies = null;
+        for (MessageRewrite rewrite : candidates) {
+            // Żądania (statusCode < 0) nie mają statusu - filtr statusu dotyczy tylko odpowiedzi
+            if (statusCode >= 0 && !rewrite.matchesStatus(statusCode)) {
+                continue;
+            }
+            if (!rewrite.matchesEndpoint(url, parts)) {
+                rewrite.getStats().miss();
+                continue;
+            }
+            rewrite.getStats().hit();
+            if (rewrite.isBodyRewrite()) {
+                if (bodies == null) {
+                    bodies = new ArrayList<>(2);
+                }
+                bodies.add(rewrite);
+            } else {
+                if (headers == null) {
+                    headers = new ArrayList<>(2);
+                }
+                headers.add(rewrite);
+            }
+        }
+        if (headers == null && bodies == null && !stripAcceptEncoding) {
+            return null;
+        }
+        return new RewritePlan(headers != null ? headers : List.of(), bodies != null ? bodies : List.of(),
+                stripAcceptEncoding);
+    }
+
+    // Skan automatem potrzebny tylko, gdy któraś kandydująca reguła ma wzorzec ścieżki "contains"
+    private boolean needsEndpoints(int[] exact, int[] statusClass) {
+        for (int index : exact) {
+            if (endpointIds[index] >= 0) {
+                return true;
+            }
+        }
+        for (int index : statusClass) {
+            if (endpointIds[index] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int firstMatch(int[] candidates, String url, long[] mask) {
+        long[] patternMask = null;
+        for (int index : candidates) {
+            int endpoint = endpointIds[index];
+            if (endpoint >= 0 && (mask == null || !isSet(mask, endpoint))) {
+                stats[index].miss();
+                continue;
+            }
+            String host = hostTexts[index];
+            if (host != null && (url == null || !hostContains(url, host))) {
+                stats[index].miss();
+                continue;
+            }
+            int pattern = patternIds[index];
+            if (pattern >= 0) {
+                if (url != null && patternMask == null) {
+                    patternMask = patternMatches(url);
+                }
+                if (url == null || !isSet(patternMask, pattern)) {
+                    stats[index].miss();
+                    continue;
+                }
+            }
+            stats[index].hit();
+            return index;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Maska wzorców glob/regex pasujących do URL. Przy braku w cache URL jest dzielony na host
+     * i ścieżkę jeden raz, a wszystkie wzorce oceniane są naraz - powtarzający się ruch trafia w cache.
+     */
+    private long[] patternMatches(String url) {
+        long[] cached = urlMatches.get(url);
+        if (cached != null) {
+            return cached;
+        }
+        UrlParts parts = UrlParts.parse(url);
+        long[] mask = new long[(patterns.length + 63) >>> 6];
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matches(url, parts)) {
+                mask[i >>> 6] |= 1L << i;
+            }
+        }
+        urlMatches.put(url, mask);
+        return mask;
+    }
+
+    private static boolean isSet(long[] mask, int bit) {
+        return (mask[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private static boolean hostContains(String url, String value) {
+        int start = UrlParts.hostStart(url);
+        int end = UrlParts.hostEnd(url, start);
+        for (int i = start; i <= end - value.length(); i++) {
+            if (url.regionMatches(true, i, value, 0, value.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getTargetStatus(int index) {
+        return targetStatus[index];
+    }
+
+    public RewriteRule getRule(int index) {
+        return rules[index];
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    // "4xx" - klasa odpowiedzi; -1 gdy to nie jest klasa
+    private static int parseStatusClass(String value) {
+        if (value.length() == 3 && (value.endsWith("xx") || value.endsWith("XX"))
+                && value.charAt(0) >= '0' && value.charAt(0) <= '9') {
+            return value.charAt(0) - '0';
+        }
+        return -1;
+    }
+
+    private static int parseStatus(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int code = Integer.parseInt(value.trim());
+            return code >= 0 && code <= MAX_STATUS ? code : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
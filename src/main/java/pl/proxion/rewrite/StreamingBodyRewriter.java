@@ -0,0 +1,54 @@
+package pl.proxion.rewrite;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.util.List;
+
+/**
+ * Podmiany w body jednej wiadomości, wykonywane kawałek po kawałku, bez agregowania body.
+ * Pamięć zależy od rozmiaru kawałka i wzorców, a nie od długości body. Instancja należy
+ * do jednej wiadomości i jednego wątku Netty.
+ */
+public final class StreamingBodyRewriter {
+
+    private final BodySubstitution[] stages;
+
+    StreamingBodyRewriter(List<BodySubstitution> stages) {
+        this.stages = stages.toArray(new BodySubstitution[0]);
+    }
+
+    /**
+     * Zwraca nowy kawałek z podmienionym body i zwalnia oryginał.
+     */
+    public HttpContent rewrite(HttpContent content) {
+        boolean last = content instanceof LastHttpContent;
+        try {
+            ByteBuf rewritten = rewrite(content.content(), last);
+            if (!last) {
+                return new DefaultHttpContent(rewritten);
+            }
+            LastHttpContent lastContent = new DefaultLastHttpContent(rewritten);
+            lastContent.trailingHeaders().set(((LastHttpContent) content).trailingHeaders());
+            return lastContent;
+        } finally {
+            content.release();
+        }
+    }
+
+    /**
+     * Przepuszcza bajty przez kolejne podmiany; nie zmienia indeksu odczytu ani licznika referencji wejścia.
+     */
+    public ByteBuf rewrite(ByteBuf content, boolean last) {
+        byte[] data = ByteBufUtil.getBytes(content);
+        for (BodySubstitution stage : stages) {
+            data = stage.apply(data, last);
+        }
+        return data.length == 0 ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(data);
+    }
+}
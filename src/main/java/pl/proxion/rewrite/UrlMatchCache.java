@@ -0,0 +1,56 @@
+package pl.proxion.rewrite;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ograniczony cache LRU wyników dopasowania wzorców glob/regex dla URL. Podzielony na segmenty
+ * z osobnymi blokadami, żeby wątki Netty nie czekały na jedną wspólną mapę. Wartości (maski)
+ * są niezmienne po wstawieniu.
+ */
+final class UrlMatchCache {
+
+    private static final int SHARDS = 16;
+
+    private final Shard[] shards = new Shard[SHARDS];
+
+    UrlMatchCache(int capacity) {
+        int perShard = Math.max(1, capacity / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(perShard);
+        }
+    }
+
+    long[] get(String url) {
+        Shard shard = shard(url);
+        synchronized (shard) {
+            return shard.get(url);
+        }
+    }
+
+    void put(String url, long[] mask) {
+        Shard shard = shard(url);
+        synchronized (shard) {
+            shard.put(url, mask);
+        }
+    }
+
+    private Shard shard(String url) {
+        int hash = url.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+    }
+
+    private static final class Shard extends LinkedHashMap<String, long[]> {
+        private final int capacity;
+
+        private Shard(int capacity) {
+            super(Math.min(capacity, 64), 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}